@@ -0,0 +1,70 @@
+package edu.cg.bench;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cg.Scenes;
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Ray;
+import edu.cg.scene.camera.PinholeCamera;
+
+/**
+ * The super sampling rays of a row of pixels, with anti aliasing factor 3:
+ * the points of transformAntiAliasing, and the flat arrays of generateRays.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CameraBenchmarks {
+	@Param("200")
+	public int size;
+
+	private PinholeCamera camera;
+	private int[] xs, ys;
+	private double[][] arrays;
+	private int row = 0;
+
+	@Setup
+	public void setup() {
+		camera = Scenes.scene1().getCamera();
+		camera.initResolution(size, size, 4.0);
+		xs = new int[size];
+		ys = new int[size];
+		for (int x = 0; x < size; x++)
+			xs[x] = x;
+		arrays = new double[6][size * camera.samplesPerPixel(3)];
+	}
+
+	@Benchmark
+	public double transformAntiAliasing() {
+		row = (row + 1) % size;
+		double sum = 0;
+		for (int x = 0; x < size; x++)
+			for (Point point : camera.transformAntiAliasing(x, row, 3))
+				sum += new Ray(camera.getCameraPosition(), point).direction().x;
+		return sum;
+	}
+
+	@Benchmark
+	public double generateRays() {
+		row = (row + 1) % size;
+		Arrays.fill(ys, row);
+		camera.generateRays(xs, ys, 0, size, 3, arrays[0], arrays[1], arrays[2], arrays[3], arrays[4], arrays[5]);
+		return arrays[3][row % arrays[3].length];
+	}
+}
@@ -0,0 +1,80 @@
+package edu.cg.bench;
+
+import java.util.Random;
+
+import edu.cg.algebra.Hit;
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Ray;
+import edu.cg.algebra.Vec;
+import edu.cg.scene.Scene;
+import edu.cg.scene.camera.PinholeCamera;
+import edu.cg.scene.lightSources.PointLight;
+import edu.cg.scene.objects.Material;
+import edu.cg.scene.objects.Plain;
+import edu.cg.scene.objects.Sphere;
+import edu.cg.scene.objects.Surface;
+
+/**
+ * The inputs of the benchmarks. They are all generated from a fixed seed (including the random materials
+ * of the bundled scenes), so every run measures the same work.
+ */
+class Inputs {
+	static final int RAYS = 1 << 12;
+	static final long SEED = 7;
+
+	private Inputs() {
+	}
+
+	static Ray[] randomRays(Random random, double distance) {
+		Ray[] rays = new Ray[RAYS];
+		for (int i = 0; i < RAYS; i++) {
+			Point source = new Point(0, 0, 0).add(randomDirection(random).mult(distance));
+			Point target = new Point(random.nextGaussian(), random.nextGaussian(), random.nextGaussian());
+			rays[i] = new Ray(source, target);
+		}
+		return rays;
+	}
+
+	static Vec randomDirection(Random random) {
+		return new Vec(random.nextGaussian(), random.nextGaussian(), random.nextGaussian()).normalize();
+	}
+
+	static Ray[] primaryRays(PinholeCamera camera, int size) {
+		Ray[] rays = new Ray[size * size];
+		for (int y = 0; y < size; y++)
+			for (int x = 0; x < size; x++)
+				rays[y*size + x] = new Ray(camera.getCameraPosition(), camera.transform(x, y));
+		return rays;
+	}
+
+	/**
+	 * A floor with a grid of spheres, lit by many dim point lights that are scattered above it.
+	 */
+	static Scene manyLightsScene(int lights) {
+		Random random = new Random(SEED);
+		Scene scene = new Scene().initName("manyLights").initAmbient(new Vec(0.05))
+				.initCamera(new Point(0, 12, 24), new Vec(0, -0.5, -1), new Vec(0, 1, 0), 3.0)
+				.addSurface(new Surface(new Plain(new Vec(0, 1, 0), new Point(0, 0, 0)), new Material()));
+		for (int x = -10; x <= 10; x += 2)
+			for (int z = -10; z <= 10; z += 2)
+				scene.addSurface(new Surface(new Sphere(new Point(x, 0.6, z), 0.6), new Material()
+						.initKd(new Vec(random.nextDouble(), random.nextDouble(), random.nextDouble()))));
+		for (int i = 0; i < lights; i++)
+			scene.addLightSource(new PointLight()
+					.initPosition(new Point(random.nextDouble() * 40 - 20, 1 + random.nextDouble() * 2, random.nextDouble() * 40 - 20))
+					.initIntensity(new Vec(0.2 * random.nextDouble(), 0.2 * random.nextDouble(), 0.2 * random.nextDouble()))
+					.initDecayFactors(0.5, 0.5, 1));
+		return scene;
+	}
+
+	static double t(Hit hit) {
+		return hit == null ? 0 : hit.t();
+	}
+
+	/**
+	 * @return the number of rendering threads, or the default one if threads is 0.
+	 */
+	static int threads(int threads) {
+		return threads > 0 ? threads : Scene.defaultThreadsCount();
+	}
+}
@@ -0,0 +1,56 @@
+package edu.cg.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cg.Logger;
+import edu.cg.scene.Scene;
+
+/**
+ * Full frames of a scene with 256 point lights: shading all of them, culling the dim ones (light cutoff),
+ * sampling 8 of them from the light tree, without the shadow cache and in single precision.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LightsBenchmarks {
+	@Param({ "all", "culled", "sampled", "noShadowCache", "singlePrecision" })
+	public String lights;
+
+	@Param("200")
+	public int size;
+
+	@Param("0") //the default number of threads
+	public int threads;
+
+	private final Logger silent = s -> {};
+	private Scene scene;
+
+	@Setup
+	public void setup() {
+		scene = Inputs.manyLightsScene(256)
+				.initLightCutoff(lights.equals("culled") ? 1.0 / 256 : 0)
+				.initLightSamples(lights.equals("sampled") ? 8 : 0)
+				.initShadowCache(!lights.equals("noShadowCache"))
+				.initSinglePrecision(lights.equals("singlePrecision"));
+	}
+
+	@Benchmark
+	public int render() throws Exception {
+		return scene.render(size, size, 4.0, Inputs.threads(threads), silent).getRGB(size / 2, size / 2);
+	}
+}
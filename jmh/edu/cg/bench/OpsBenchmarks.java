@@ -0,0 +1,89 @@
+package edu.cg.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cg.algebra.MutableVec;
+import edu.cg.algebra.Ops;
+import edu.cg.algebra.Vec;
+import edu.cg.scene.objects.Material;
+import edu.cg.scene.objects.ShadingKernel;
+
+/**
+ * The vector operations of the shading: reflection, refraction and the Phong terms of a light,
+ * with and without a specular coefficient.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OpsBenchmarks {
+	private final Vec[] directions = new Vec[Inputs.RAYS];
+	private final Vec[] normals = new Vec[Inputs.RAYS];
+	private final Vec[] lights = new Vec[Inputs.RAYS];
+	private final MutableVec Il = new MutableVec(1, 1, 1), I = new MutableVec();
+	private final ShadingKernel kernel = new ShadingKernel(new Material(), new Vec(0.1));
+	private final ShadingKernel diffuseKernel = new ShadingKernel(new Material().initKs(new Vec(0)), new Vec(0.1));
+	private int i = 0;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(Inputs.SEED);
+		for (int j = 0; j < Inputs.RAYS; j++) {
+			normals[j] = Inputs.randomDirection(random);
+			//the directions point against the normals, like the rays that hit a surface
+			directions[j] = Inputs.randomDirection(random);
+			if(directions[j].dot(normals[j]) > 0)
+				directions[j] = directions[j].neg();
+		}
+		//the lights are on the side of the normals, like the lights that a hit sees
+		for (int j = 0; j < Inputs.RAYS; j++) {
+			lights[j] = Inputs.randomDirection(random);
+			if(lights[j].dot(normals[j]) < 0)
+				lights[j] = lights[j].neg();
+		}
+	}
+
+	private int next() {
+		return i = (i + 1) & (Inputs.RAYS - 1);
+	}
+
+	@Benchmark
+	public Vec reflect() {
+		int j = next();
+		return Ops.reflect(directions[j], normals[j]);
+	}
+
+	@Benchmark
+	public Vec refract() {
+		int j = next();
+		return Ops.refract(directions[j], normals[j], 1.0, 1.5);
+	}
+
+	@Benchmark
+	public double addLightDependent() {
+		int j = next();
+		kernel.addLightDependent(normals[j], lights[j], directions[j], Il, I.set(0, 0, 0));
+		return I.x;
+	}
+
+	@Benchmark
+	public double addLightDependentNoSpecular() {
+		int j = next();
+		diffuseKernel.addLightDependent(normals[j], lights[j], directions[j], Il, I.set(0, 0, 0));
+		return I.x;
+	}
+}
@@ -0,0 +1,85 @@
+package edu.cg.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cg.Logger;
+import edu.cg.Scenes;
+import edu.cg.algebra.Ray;
+import edu.cg.scene.Scene;
+
+/**
+ * The closest hit queries and full frames of the bundled scenes, in double and in single precision.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SceneBenchmarks {
+	@Param({ "1", "2", "3", "4", "5", "6" })
+	public int scene;
+
+	@Param({ "false", "true" })
+	public boolean singlePrecision;
+
+	@Param("200")
+	public int size;
+
+	@Param("0") //the default number of threads
+	public int threads;
+
+	private final Logger silent = s -> {};
+	private Scene renderedScene;
+	private Ray[] rays;
+	private int i = 0;
+
+	@Setup
+	public void setup() throws Exception {
+		renderedScene = scene(scene).initSinglePrecision(singlePrecision);
+		//the first frame also builds the acceleration structures that getMinHit uses
+		renderedScene.render(size, size, 4.0, Inputs.threads(threads), silent);
+		rays = Inputs.primaryRays(renderedScene.getCamera(), size);
+	}
+
+	private static Scene scene(int n) {
+		switch(n) {
+		case 1: return Scenes.scene1();
+		case 2: return Scenes.scene2();
+		case 3: return Scenes.scene3();
+		case 4: return Scenes.scene4(new Random(Inputs.SEED));
+		case 5: return Scenes.scene5(new Random(Inputs.SEED));
+		case 6: return Scenes.scene6();
+		default: throw new IllegalArgumentException("No scene " + n);
+		}
+	}
+
+	/**
+	 * A single closest hit query, of the primary rays of the scene in turn.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public double getMinHit() {
+		i = (i + 1) % rays.length;
+		return Inputs.t(renderedScene.getMinHit(rays[i]));
+	}
+
+	@Benchmark
+	public int render() throws Exception {
+		return renderedScene.render(size, size, 4.0, Inputs.threads(threads), silent).getRGB(size / 2, size / 2);
+	}
+}
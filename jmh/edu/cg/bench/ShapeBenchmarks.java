@@ -0,0 +1,65 @@
+package edu.cg.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Ray;
+import edu.cg.algebra.Vec;
+import edu.cg.scene.objects.AxisAlignedBox;
+import edu.cg.scene.objects.Plain;
+import edu.cg.scene.objects.Sphere;
+
+/**
+ * The intersection of a ray with every kind of shape.
+ * The rays come from around the origin, and about half of them hit the shapes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShapeBenchmarks {
+	private Ray[] rays;
+	private int i = 0;
+	private final Sphere sphere = new Sphere(new Point(0, 0, 0), 1.0);
+	private final AxisAlignedBox box = new AxisAlignedBox(new Point(-1, -1, -1), new Point(1, 1, 1));
+	private final Plain plain = new Plain(new Vec(0, 0, 1), new Point(0, 0, 0));
+
+	@Setup
+	public void setup() {
+		rays = Inputs.randomRays(new Random(Inputs.SEED), 3.0);
+	}
+
+	private Ray next() {
+		i = (i + 1) & (Inputs.RAYS - 1);
+		return rays[i];
+	}
+
+	@Benchmark
+	public double sphereIntersect() {
+		return Inputs.t(sphere.intersect(next()));
+	}
+
+	@Benchmark
+	public double axisAlignedBoxIntersect() {
+		return Inputs.t(box.intersect(next()));
+	}
+
+	@Benchmark
+	public double plainIntersect() {
+		return Inputs.t(plain.intersect(next()));
+	}
+}
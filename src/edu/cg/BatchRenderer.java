@@ -0,0 +1,279 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import edu.cg.distributed.RenderCoordinator;
+import edu.cg.distributed.RenderCoordinator.LocalWorkers;
+import edu.cg.scene.Scene;
+import edu.cg.scene.animation.Animation;
+import edu.cg.scene.io.SceneFiles;
+
+/**
+ * Renders scene files from the command line, without opening any window.
+ * Usage: BatchRenderer [options] scene.json...
+ * Binary scene files (see BinaryScene) are rendered as well.
+ * The images are saved as PNG files, named after the scene files, in the output folder.
+ * Turntable animations are saved as PNG files that are numbered by frame.
+ */
+public class BatchRenderer {
+	private static final String USAGE = "Usage: BatchRenderer [options] scene.json..." + System.lineSeparator() +
+			"Options:" + System.lineSeparator() +
+			"  -width <pixels>          image width (default 400)" + System.lineSeparator() +
+			"  -height <pixels>         image height (default 400)" + System.lineSeparator() +
+			"  -viewPlainWidth <width>  width of the view plain (default 4.0)" + System.lineSeparator() +
+			"  -aa <1|2|3>              anti aliasing factor (default: the scene's)" + System.lineSeparator() +
+			"  -adaptive                supersample only the pixels that differ from their neighbors" + System.lineSeparator() +
+			"  -minThroughput <weight>  the minimal weight of the secondary rays (default: the scene's)" + System.lineSeparator() +
+			"  -roulette                prune the secondary rays with russian roulette" + System.lineSeparator() +
+			"  -lightCutoff <intensity> skip the lights whose contribution to a hit is below the cutoff" + System.lineSeparator() +
+			"  -lightSamples <n>        shade n point lights per hit, sampled by their contribution" + System.lineSeparator() +
+			"  -noPackets               trace the primary rays one by one, instead of in packets" + System.lineSeparator() +
+			"  -noShadowCache           don't test the last blocker of every light before the scene" + System.lineSeparator() +
+			"  -singlePrecision         traverse the scene and intersect the packed spheres in floats" + System.lineSeparator() +
+			"  -threads <n>             rendering threads (default: the number of processors)" + System.lineSeparator() +
+			"  -workers <host:port,...> render on running RenderWorker processes" + System.lineSeparator() +
+			"  -localWorkers <n>        render on n worker processes that are started on this machine," + System.lineSeparator() +
+			"                           with the rendering threads split between them" + System.lineSeparator() +
+			"  -turntable <frames>      render a turntable animation of the given number of frames, in which" + System.lineSeparator() +
+			"                           the camera turns around the scene, into numbered PNG files" + System.lineSeparator() +
+			"  -out <folder>            output folder (default outputs)";
+
+	private int width = 400;
+	private int height = 400;
+	private double viewPlainWidth = 4.0;
+	private int antiAliasingFactor = 0; //0 keeps the factor of the scene
+	private boolean adaptive = false;
+	private double minThroughput = -1; //negative keeps the minimal throughput of the scene
+	private boolean russianRoulette = false;
+	private double lightCutoff = -1; //negative keeps the light cutoff of the scene
+	private int lightSamples = -1; //negative keeps the light samples of the scene
+	private boolean noPackets = false;
+	private boolean noShadowCache = false;
+	private boolean singlePrecision = false;
+	private int nThreads = Scene.defaultThreadsCount();
+	private List<InetSocketAddress> workers = new ArrayList<>();
+	private int localWorkers = 0;
+	private int turntableFrames = 0; //0 renders a single image
+	private File outputDir = new File("outputs");
+	private List<String> sceneFiles = new ArrayList<>();
+
+	private final Logger logger = s -> System.out.println(s);
+
+	public static void main(String[] args) {
+		//No window is ever opened, so AWT doesn't need a display.
+		System.setProperty("java.awt.headless", "true");
+
+		BatchRenderer renderer = new BatchRenderer();
+		try {
+			renderer.parse(args);
+		} catch(IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+
+		if(!renderer.renderAll())
+			System.exit(1);
+	}
+
+	private void parse(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if(!arg.startsWith("-")) {
+				sceneFiles.add(arg);
+				continue;
+			}
+			if(arg.equals("-adaptive")) {
+				adaptive = true;
+				continue;
+			}
+			if(arg.equals("-roulette")) {
+				russianRoulette = true;
+				continue;
+			}
+			if(arg.equals("-noPackets")) {
+				noPackets = true;
+				continue;
+			}
+			if(arg.equals("-noShadowCache")) {
+				noShadowCache = true;
+				continue;
+			}
+			if(arg.equals("-singlePrecision")) {
+				singlePrecision = true;
+				continue;
+			}
+			if(i + 1 == args.length)
+				throw new IllegalArgumentException("Missing value for " + arg);
+			String value = args[++i];
+			try {
+				switch(arg) {
+				case "-width":
+					width = Integer.parseInt(value);
+					break;
+				case "-height":
+					height = Integer.parseInt(value);
+					break;
+				case "-viewPlainWidth":
+					viewPlainWidth = Double.parseDouble(value);
+					break;
+				case "-aa":
+					antiAliasingFactor = Integer.parseInt(value);
+					break;
+				case "-minThroughput":
+					minThroughput = Double.parseDouble(value);
+					if(minThroughput < 0)
+						throw new IllegalArgumentException("Minimal throughput can't be negative");
+					break;
+				case "-lightCutoff":
+					lightCutoff = Double.parseDouble(value);
+					if(lightCutoff < 0)
+						throw new IllegalArgumentException("Light cutoff can't be negative");
+					break;
+				case "-lightSamples":
+					lightSamples = Integer.parseInt(value);
+					if(lightSamples < 0)
+						throw new IllegalArgumentException("Light samples count can't be negative");
+					break;
+				case "-threads":
+					nThreads = Integer.parseInt(value);
+					break;
+				case "-workers":
+					for (String worker : value.split(",")) {
+						int colon = worker.lastIndexOf(':');
+						if(colon <= 0)
+							throw new IllegalArgumentException("Illegal worker address: " + worker);
+						workers.add(new InetSocketAddress(worker.substring(0, colon),
+								Integer.parseInt(worker.substring(colon + 1))));
+					}
+					break;
+				case "-localWorkers":
+					localWorkers = Integer.parseInt(value);
+					break;
+				case "-turntable":
+					turntableFrames = Integer.parseInt(value);
+					break;
+				case "-out":
+					outputDir = new File(value);
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option: " + arg);
+				}
+			} catch(NumberFormatException e) {
+				throw new IllegalArgumentException("Illegal value for " + arg + ": " + value);
+			}
+		}
+
+		if(sceneFiles.isEmpty())
+			throw new IllegalArgumentException("No scene files were given");
+		if(width <= 0 | height <= 0)
+			throw new IllegalArgumentException("Width and height must be positive");
+		if(viewPlainWidth <= 0)
+			throw new IllegalArgumentException("View plain width must be positive");
+		if(antiAliasingFactor < 0 | antiAliasingFactor > 3)
+			throw new IllegalArgumentException("Anti aliasing factor must be 1, 2 or 3");
+		if(nThreads < 1)
+			throw new IllegalArgumentException("Threads count must be positive");
+		if(localWorkers < 0)
+			throw new IllegalArgumentException("Workers count can't be negative");
+		if(turntableFrames < 0)
+			throw new IllegalArgumentException("Frames count can't be negative");
+		if(turntableFrames > 0 && (!workers.isEmpty() || localWorkers > 0))
+			throw new IllegalArgumentException("Animations are rendered locally, without workers");
+	}
+
+	/**
+	 * Renders all the scene files. A scene that fails doesn't stop the others.
+	 * @return true if all the scenes have been rendered and saved.
+	 */
+	private boolean renderAll() {
+		if(!outputDir.exists() && !outputDir.mkdirs()) {
+			logger.log("Couldn't create the folder " + outputDir);
+			return false;
+		}
+
+		LocalWorkers local = null;
+		if(localWorkers > 0) {
+			try {
+				local = new LocalWorkers(localWorkers, Math.max(1, nThreads / localWorkers));
+				workers.addAll(local.addresses());
+			} catch(IOException e) {
+				logger.log("Couldn't start the local workers: " + e.getMessage());
+				return false;
+			}
+		}
+
+		boolean success = true;
+		try {
+			for (String sceneFile : sceneFiles) {
+				try {
+					render(sceneFile);
+				} catch(Exception e) {
+					logger.log("Couldn't render " + sceneFile + ": " + e);
+					success = false;
+				}
+			}
+		} finally {
+			if(local != null)
+				local.close();
+		}
+		return success;
+	}
+
+	private void render(String sceneFile) throws Exception {
+		Scene scene = SceneFiles.load(sceneFile);
+		if(antiAliasingFactor > 0)
+			scene.initAntiAliasingFactor(antiAliasingFactor);
+		if(adaptive)
+			scene.initAdaptiveAntiAliasing(true);
+		if(minThroughput >= 0)
+			scene.initMinThroughput(minThroughput);
+		if(russianRoulette)
+			scene.initRussianRoulette(true);
+		if(lightCutoff >= 0)
+			scene.initLightCutoff(lightCutoff);
+		if(lightSamples >= 0)
+			scene.initLightSamples(lightSamples);
+		if(noPackets)
+			scene.initPacketTracing(false);
+		if(noShadowCache)
+			scene.initShadowCache(false);
+		if(singlePrecision)
+			scene.initSinglePrecision(true);
+
+		long start = System.nanoTime();
+		if(turntableFrames > 0) {
+			String prefix = baseName(sceneFile);
+			new Animation(scene).initFrames(0, turntableFrames - 1).initTurntable(360)
+				.render(outputDir, prefix, width, height, viewPlainWidth, nThreads, logger);
+			logger.log(turntableFrames + " frames of " + scene.getName() + " have been rendered in " +
+					(System.nanoTime() - start) / 1000000 + "ms and saved to " +
+					new File(outputDir, Animation.frameName(prefix, 0)).getPath() + "...");
+			return;
+		}
+		BufferedImage img = workers.isEmpty() ? scene.render(width, height, viewPlainWidth, nThreads, logger) :
+				RenderCoordinator.render(scene, width, height, viewPlainWidth, workers, logger);
+		long millis = (System.nanoTime() - start) / 1000000;
+
+		File file = new File(outputDir, imageName(sceneFile));
+		ImageIO.write(img, "png", file);
+		logger.log(scene.getName() + " has been rendered in " + millis + "ms and saved to " + file.getPath());
+	}
+
+	private static String imageName(String sceneFile) {
+		return baseName(sceneFile) + ".png";
+	}
+
+	private static String baseName(String sceneFile) {
+		String name = new File(sceneFile).getName();
+		int dot = name.lastIndexOf('.');
+		return dot > 0 ? name.substring(0, dot) : name;
+	}
+}
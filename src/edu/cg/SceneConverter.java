@@ -0,0 +1,56 @@
+package edu.cg;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.cg.scene.Scene;
+import edu.cg.scene.io.BinaryScene;
+import edu.cg.scene.io.SceneFiles;
+
+/**
+ * Converts scene files to the binary scene format.
+ * Usage: SceneConverter [-out folder] scene.json...
+ * The binary files are named after the scene files, and are saved in the output folder
+ * (by default, next to the scene files).
+ */
+public class SceneConverter {
+	private static final String USAGE = "Usage: SceneConverter [-out folder] scene.json...";
+
+	public static void main(String[] args) {
+		File outputDir = null;
+		List<String> sceneFiles = new ArrayList<>();
+		for (int i = 0; i < args.length; i++) {
+			if(args[i].equals("-out") && i + 1 < args.length)
+				outputDir = new File(args[++i]);
+			else
+				sceneFiles.add(args[i]);
+		}
+		if(sceneFiles.isEmpty()) {
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+		if(outputDir != null && !outputDir.exists() && !outputDir.mkdirs()) {
+			System.err.println("Couldn't create the folder " + outputDir);
+			System.exit(1);
+		}
+
+		boolean success = true;
+		for (String sceneFile : sceneFiles) {
+			File file = new File(sceneFile);
+			String name = file.getName();
+			int dot = name.lastIndexOf('.');
+			name = (dot > 0 ? name.substring(0, dot) : name) + BinaryScene.EXTENSION;
+			File binaryFile = outputDir != null ? new File(outputDir, name) : new File(file.getParentFile(), name);
+			try {
+				Scene scene = SceneFiles.load(sceneFile);
+				BinaryScene.write(scene, binaryFile.toPath());
+				System.out.println(sceneFile + " -> " + binaryFile.getPath() + " (" + binaryFile.length() + " bytes)");
+			} catch(Exception e) {
+				System.err.println("Couldn't convert " + sceneFile + ": " + e);
+				success = false;
+			}
+		}
+		System.exit(success ? 0 : 1);
+	}
+}
@@ -1,5 +1,8 @@
 package edu.cg;
 
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
 import edu.cg.algebra.Point;
 import edu.cg.algebra.Vec;
 import edu.cg.scene.Scene;
@@ -83,6 +86,13 @@ public class Scenes {
 	}
 
 	public static Scene scene4() {
+		return scene4(ThreadLocalRandom.current());
+	}
+
+	/**
+	 * @param random - the generator of the random materials of the boxes.
+	 */
+	public static Scene scene4(Random random) {
 		int pyramidHeight = 4, boxHeight=1,boxWidth=1,boxDepth=1;
 		Scene pyramidScence = new Scene();
 		pyramidScence.initName("Scene4");
@@ -112,7 +122,7 @@ public class Scenes {
 				for (int j = 0; j<numOfBoxes;j++) {
 					Shape boxShape = new AxisAlignedBox(new Point(offsetX+i*boxWidth, offsetY+j*boxDepth, boxHeight*currentHeight),
 							new Point(offsetX+(i+1)*boxWidth, offsetY+(j+1)*boxDepth, (currentHeight+1)*boxHeight));
-					Material boxMat = Material.getRandomMaterial();
+					Material boxMat = Material.getRandomMaterial(random);
 					Surface boxSurface = new Surface(boxShape, boxMat);
 					pyramidScence.addSurface(boxSurface);
 				}
@@ -120,27 +130,34 @@ public class Scenes {
 			
 		}
 		Plain scenePlain = new Plain(new Vec(0.0, 0.0, 1.0), new Point(0.0, 0.0, 0.0));
-		Material plainMat = Material.getGlassMaterial(false).initReflectionIntensity(0.4);
+		Material plainMat = Material.getGlassMaterial(false, random).initReflectionIntensity(0.4);
 		Surface plainSurface = new Surface(scenePlain, plainMat);
 		pyramidScence.addSurface(plainSurface);
 		return pyramidScence;
 	}
 
 	public static Scene scene5() {
+		return scene5(ThreadLocalRandom.current());
+	}
+
+	/**
+	 * @param random - the generator of the random materials of the spheres.
+	 */
+	public static Scene scene5(Random random) {
 		Shape sphereShape1 = new Sphere(new Point(0.5, 0.5, 0.5), 0.5);
-		Material sphereMat1 = Material.getRandomMaterial();
+		Material sphereMat1 = Material.getRandomMaterial(random);
 		Surface sphereSurface1 = new Surface(sphereShape1, sphereMat1);
 
 		Shape sphereShape2 = new Sphere(new Point(-0.5, 0.5, 0.5), 0.5);
-		Material sphereMat2 = Material.getRandomMaterial();
+		Material sphereMat2 = Material.getRandomMaterial(random);
 		Surface sphereSurface2 = new Surface(sphereShape2, sphereMat2);
 
 		Shape sphereShape3 = new Sphere(new Point(0.5, -0.5, 0.5), 0.5);
-		Material sphereMat3 = Material.getRandomMaterial();
+		Material sphereMat3 = Material.getRandomMaterial(random);
 		Surface sphereSurface3 = new Surface(sphereShape3, sphereMat3);
 
 		Shape sphereShape4 = new Sphere(new Point(-0.5, -0.5, 0.5), 0.5);
-		Material sphereMat4 = Material.getRandomMaterial();
+		Material sphereMat4 = Material.getRandomMaterial(random);
 		Surface sphereSurface4 = new Surface(sphereShape4, sphereMat4);
 
 		Light dirLight = new DirectionalLight().initDirection(new Vec(0.0, 0.0, -1.0))
@@ -0,0 +1,45 @@
+package edu.cg.algebra;
+
+public class BoundingBox {
+	private final Point minPoint;
+	private final Point maxPoint;
+	
+	/**
+	 * Creates an axis aligned bounding box. The corners are sorted per axis,
+	 * so the two points may be given in any order.
+	 */
+	public BoundingBox(Point p1, Point p2) {
+		this.minPoint = new Point(Math.min(p1.x, p2.x), Math.min(p1.y, p2.y), Math.min(p1.z, p2.z));
+		this.maxPoint = new Point(Math.max(p1.x, p2.x), Math.max(p1.y, p2.y), Math.max(p1.z, p2.z));
+	}
+	
+	public Point min() {
+		return minPoint;
+	}
+	
+	public Point max() {
+		return maxPoint;
+	}
+	
+	public Point center() {
+		return minPoint.add(maxPoint).mult(0.5);
+	}
+	
+	public BoundingBox union(BoundingBox other) {
+		return new BoundingBox(
+				new Point(Math.min(minPoint.x, other.minPoint.x), Math.min(minPoint.y, other.minPoint.y), Math.min(minPoint.z, other.minPoint.z)),
+				new Point(Math.max(maxPoint.x, other.maxPoint.x), Math.max(maxPoint.y, other.maxPoint.y), Math.max(maxPoint.z, other.maxPoint.z)));
+	}
+	
+	public double surfaceArea() {
+		double dx = maxPoint.x - minPoint.x;
+		double dy = maxPoint.y - minPoint.y;
+		double dz = maxPoint.z - minPoint.z;
+		return 2 * (dx*dy + dy*dz + dz*dx);
+	}
+	
+	@Override
+	public String toString() {
+		return "[" + minPoint + ", " + maxPoint + "]";
+	}
+}
@@ -8,6 +8,7 @@ public class Hit implements Comparable<Hit> {
 	
 	private boolean isWithin = false;
 	private Surface surface = null;
+	private int materialIndex = -1;
 	
 	public Hit(double t, Vec normalToSurface) {
 		this.t = t;
@@ -24,6 +25,14 @@ public class Hit implements Comparable<Hit> {
 
 	public void setSurface(Surface surface) {
 		this.surface = surface;
+		this.materialIndex = surface == null ? -1 : surface.materialIndex();
+	}
+	
+	/**
+	 * @return the index of the material of the surface in the material table of the scene.
+	 */
+	public int getMaterialIndex() {
+		return materialIndex;
 	}
 	
 	//checks if the intersection was occurred inside the surface (for refraction)
@@ -0,0 +1,124 @@
+package edu.cg.algebra;
+
+/**
+ * A mutable counterpart of Vec (and Point) for the hot paths of the renderer.
+ * All the operations are done in place and return this vector, so they can be chained
+ * without allocating temporaries. Use Scratch to get per thread instances.
+ */
+public class MutableVec {
+	public double x, y, z;
+	
+	public MutableVec(double x, double y, double z) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+	}
+	
+	public MutableVec() {
+		this(0, 0, 0);
+	}
+	
+	public MutableVec set(double x, double y, double z) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		return this;
+	}
+	
+	public MutableVec set(Vec v) {
+		return set(v.x, v.y, v.z);
+	}
+	
+	public MutableVec set(Point p) {
+		return set(p.x, p.y, p.z);
+	}
+	
+	public MutableVec set(MutableVec v) {
+		return set(v.x, v.y, v.z);
+	}
+	
+	//this = p1 - p2
+	public MutableVec setSub(Point p1, Point p2) {
+		return set(p1.x - p2.x, p1.y - p2.y, p1.z - p2.z);
+	}
+	
+	public MutableVec add(Vec v) {
+		return set(x + v.x, y + v.y, z + v.z);
+	}
+	
+	public MutableVec add(MutableVec v) {
+		return set(x + v.x, y + v.y, z + v.z);
+	}
+	
+	//this += a*v
+	public MutableVec addScaled(double a, Vec v) {
+		return set(x + a*v.x, y + a*v.y, z + a*v.z);
+	}
+	
+	//this += a*v
+	public MutableVec addScaled(double a, MutableVec v) {
+		return set(x + a*v.x, y + a*v.y, z + a*v.z);
+	}
+	
+	public MutableVec mult(double a) {
+		return set(a*x, a*y, a*z);
+	}
+	
+	public MutableVec mult(Vec v) {
+		return set(x*v.x, y*v.y, z*v.z);
+	}
+	
+	public MutableVec mult(MutableVec v) {
+		return set(x*v.x, y*v.y, z*v.z);
+	}
+	
+	public MutableVec neg() {
+		return mult(-1);
+	}
+	
+	public MutableVec normalize() {
+		return mult(1.0/norm());
+	}
+	
+	//same as Ops.reflect(this, normal)
+	public MutableVec reflect(Vec normal) {
+		return addScaled(-2*dot(normal), normal);
+	}
+	
+	public double dot(Vec v) {
+		return x*v.x + y*v.y + z*v.z;
+	}
+	
+	public double dot(MutableVec v) {
+		return x*v.x + y*v.y + z*v.z;
+	}
+	
+	public double normSqr() {
+		return x*x + y*y + z*z;
+	}
+	
+	public double norm() {
+		return Math.sqrt(normSqr());
+	}
+	
+	public Vec toVec() {
+		return new Vec(x, y, z);
+	}
+	
+	public Point toPoint() {
+		return new Point(x, y, z);
+	}
+	
+	/**
+	 * Packs the (clipped) color into an int, like Vec.toRGB().
+	 * @return the color in the 0xRRGGBB format.
+	 */
+	public int toRGB() {
+		return Vec.toRGB(x, y, z);
+	}
+	
+	@Override
+	public String toString() {
+		return "(" + x + ", " + y + ", " + z + ")";
+	}
+}
@@ -5,6 +5,18 @@ package edu.cg.algebra;
 public class Ops {
 	public static final double epsilon = 1e-5;
 	public static final double infinity = 1e8;
+	//The relative rounding error of single precision hit distances (a few float ulps), see epsilon(scale, relativeError)
+	public static final double floatError = 16 * Math.ulp(1.0f);
+	
+	/**
+	 * The smallest hit distance for coordinates of up to the given magnitude, whose hit distances are calculated
+	 * with the given relative error: the rounding errors of far coordinates may be bigger than the fixed epsilon,
+	 * so hits of a ray on the surface that it starts from would not be told apart from real hits.
+	 * @return epsilon, or the absolute error at the scale if it is bigger.
+	 */
+	public static double epsilon(double scale, double relativeError) {
+		return Math.max(epsilon, scale * relativeError);
+	}
 	
 	public static double dot(Vec u, Vec v) {
 		return u.x*v.x + u.y*v.y + u.z*v.z;
@@ -15,7 +27,7 @@ public class Ops {
 	}
 	
 	public static Vec mult(double a, Vec v) {
-		return mult(new Vec(a), v);
+		return new Vec(a*v.x, a*v.y, a*v.z);
 	}
 	
 	public static Vec mult(Vec u, Vec v) {
@@ -23,7 +35,7 @@ public class Ops {
 	}
 	
 	public static Point mult(double a, Point p) {
-		return mult(new Point(a), p);
+		return new Point(a*p.x, a*p.y, a*p.z);
 	}
 	
 	public static Point mult(Point p1, Point p2) {
@@ -47,11 +59,12 @@ public class Ops {
 	}
 	
 	public static double dist(Point p1, Point p2) {
-		return length(sub(p1, p2));
+		return Math.sqrt(distSqr(p1, p2));
 	}
 	
 	public static double distSqr(Point p1, Point p2) {
-		return lengthSqr(sub(p1, p2));
+		double dx = p1.x-p2.x, dy = p1.y-p2.y, dz = p1.z-p2.z;
+		return dx*dx + dy*dy + dz*dz;
 	}
 	
 	public static Vec normalize(Vec v) {
@@ -59,7 +72,7 @@ public class Ops {
 	}
 	
 	public static Vec neg(Vec v) {
-		return mult(-1, v);
+		return new Vec(-v.x, -v.y, -v.z);
 	}
 	
 	public static Vec add(Vec u, Vec v) {
@@ -76,7 +89,7 @@ public class Ops {
 	
 	public static Point add(Point p, double t, Vec v) {
 		//returns p + tv;
-		return add(p, mult(t, v));
+		return new Point(p.x+t*v.x, p.y+t*v.y, p.z+t*v.z);
 	}
 	
 	public static Vec sub(Point p1, Point p2) {
@@ -92,7 +105,8 @@ public class Ops {
 	}
 	
 	public static Vec reflect(Vec u, Vec normal) {
-		return add(u, mult(-2*dot(u, normal), normal));
+		double a = -2*dot(u, normal);
+		return new Vec(u.x+a*normal.x, u.y+a*normal.y, u.z+a*normal.z);
 	}
 	
 	public static Vec refract(Vec u, Vec normal, double n1, double n2) {
@@ -101,8 +115,8 @@ public class Ops {
 		if(n1 == n2)
 			return u;
 		
-		double dot = dot(neg(u), normal);
-		dot *= dot;
+		double cosTheta1 = -dot(u, normal);
+		double dot = cosTheta1 * cosTheta1;
 		if(n1 > n2) {
 			double criticalAngle = n2 / n1;
 			criticalAngle *= criticalAngle;
@@ -110,7 +124,7 @@ public class Ops {
 				return reflect(u, normal);
 		}
 		
-		Vec b = add(u, mult(dot(neg(u), normal), normal));
+		Vec b = add(u, mult(cosTheta1, normal));
 		b = normalize(b);
 		double sin2Theta2 = (n1 * n1 * (1-dot)) / (n2*n2);
 		double cos2Theta2 = 1 - sin2Theta2;
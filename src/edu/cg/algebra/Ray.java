@@ -5,14 +5,25 @@ public class Ray {
 	private final Vec direction;
 	
 	public Ray(Point source, Vec direction) {
-		this.source = source;
-		this.direction = direction.normalize();
+		this(source, direction, true);
 	}
 	
 	public Ray(Point p0, Point p1) {
 		this(p0, p1.sub(p0).normalize());
 	}
 	
+	private Ray(Point source, Vec direction, boolean normalize) {
+		this.source = source;
+		this.direction = normalize ? direction.normalize() : direction;
+	}
+	
+	/**
+	 * Creates a ray whose direction is already normalized, as is.
+	 */
+	public static Ray normalized(Point source, Vec direction) {
+		return new Ray(source, direction, false);
+	}
+	
 	public Point source() {
 		return source;
 	}
@@ -0,0 +1,70 @@
+package edu.cg.algebra;
+
+import java.util.Arrays;
+
+/**
+ * Per thread scratch storage of mutable vectors and of arrays (e.g. traversal stacks).
+ * The renderer takes the scratch of its thread once and passes it down the hot paths,
+ * so temporary vectors and arrays are reused instead of being allocated per ray.
+ */
+public class Scratch {
+	private static final ThreadLocal<Scratch> scratches = ThreadLocal.withInitial(Scratch::new);
+	
+	private MutableVec[] vecs = new MutableVec[0];
+	private int[][] ints = new int[0][];
+	private double[][] doubles = new double[0][];
+	
+	private Scratch() {
+	}
+	
+	/**
+	 * @return the scratch storage of the current thread.
+	 */
+	public static Scratch get() {
+		return scratches.get();
+	}
+	
+	/**
+	 * Returns the vector in the specified slot. The slots are owned by the caller,
+	 * so two code paths that are active at the same time must use different slots.
+	 * @param index - the slot index
+	 * @return the (reused) vector of the slot.
+	 */
+	public MutableVec vec(int index) {
+		if(index >= vecs.length) {
+			MutableVec[] newVecs = new MutableVec[Math.max(index + 1, 2 * vecs.length)];
+			System.arraycopy(vecs, 0, newVecs, 0, vecs.length);
+			for (int i = vecs.length; i < newVecs.length; i++)
+				newVecs[i] = new MutableVec();
+			vecs = newVecs;
+		}
+		return vecs[index];
+	}
+	
+	/**
+	 * Returns the int array in the specified slot, which is owned by the caller like the slots of vec.
+	 * The int slots and the double slots are separate.
+	 * @param size - the minimal length of the array.
+	 * @return the (reused) array of the slot, whose contents are undefined.
+	 */
+	public int[] ints(int index, int size) {
+		if(index >= ints.length)
+			ints = Arrays.copyOf(ints, Math.max(index + 1, 2 * ints.length));
+		if(ints[index] == null || ints[index].length < size)
+			ints[index] = new int[size];
+		return ints[index];
+	}
+	
+	/**
+	 * Returns the double array in the specified slot, which is owned by the caller like the slots of vec.
+	 * @param size - the minimal length of the array.
+	 * @return the (reused) array of the slot, whose contents are undefined.
+	 */
+	public double[] doubles(int index, int size) {
+		if(index >= doubles.length)
+			doubles = Arrays.copyOf(doubles, Math.max(index + 1, 2 * doubles.length));
+		if(doubles[index] == null || doubles[index].length < size)
+			doubles[index] = new double[size];
+		return doubles[index];
+	}
+}
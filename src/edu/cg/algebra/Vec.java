@@ -75,6 +75,21 @@ public class Vec {
 		return new Color(clip(x), clip(y), clip(z));
 	}
 	
+	/**
+	 * Packs the (clipped) color into an int, the same way as toColor().getRGB() without the alpha channel.
+	 * @return the color in the 0xRRGGBB format.
+	 */
+	public int toRGB() {
+		return toRGB(x, y, z);
+	}
+	
+	static int toRGB(double x, double y, double z) {
+		int r = (int)(clip(x) * 255 + 0.5);
+		int g = (int)(clip(y) * 255 + 0.5);
+		int b = (int)(clip(z) * 255 + 0.5);
+		return (r << 16) | (g << 8) | b;
+	}
+	
 	private static float clip(double val) {
 		return (float)Math.min(1, Math.max(0, val));
 	}
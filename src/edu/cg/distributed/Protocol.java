@@ -0,0 +1,44 @@
+package edu.cg.distributed;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The messages between a coordinator and a worker, over a socket:
+ * 1. coordinator: MAGIC, VERSION, the length of the scene JSON and its UTF-8 bytes,
+ *    the image width and height and the view plain width.
+ * 2. coordinator: a region x0, y0, x1, y1 (exclusive).
+ *    worker: OK and the RGB pixels of the region, row by row, or FAILED and an error message.
+ *    Repeated for every region that the worker gets.
+ * 3. coordinator: END (instead of a region).
+ */
+final class Protocol {
+	static final int MAGIC = 0x52544457; //"RTDW"
+	static final int VERSION = 1;
+	static final int END = -1;
+	static final int OK = 0;
+	static final int FAILED = 1;
+
+	private Protocol() {
+	}
+
+	static void writePixels(DataOutputStream out, int[] pixels) throws IOException {
+		ByteBuffer bytes = ByteBuffer.allocate(4 * pixels.length);
+		bytes.asIntBuffer().put(pixels);
+		out.writeInt(pixels.length);
+		out.write(bytes.array());
+	}
+
+	static int[] readPixels(DataInputStream in, int expected) throws IOException {
+		int n = in.readInt();
+		if(n != expected)
+			throw new IOException("Expected " + expected + " pixels, got " + n);
+		byte[] bytes = new byte[4 * n];
+		in.readFully(bytes);
+		int[] pixels = new int[n];
+		ByteBuffer.wrap(bytes).asIntBuffer().get(pixels);
+		return pixels;
+	}
+}
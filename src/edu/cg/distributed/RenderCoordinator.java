@@ -0,0 +1,182 @@
+package edu.cg.distributed;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import edu.cg.Logger;
+import edu.cg.menu.GsonMaker;
+import edu.cg.scene.Scene;
+
+/**
+ * Renders a scene on worker processes (see RenderWorker) over sockets.
+ * The scene is sent to every worker in the JSON scene format, and the image is split into square regions,
+ * which are handed to the workers one at a time, so the faster workers get more of them.
+ * The pixels that the workers send back are written directly into the image.
+ * The regions of a worker that fails are handed to the other workers.
+ */
+public class RenderCoordinator {
+	private static final int REGION_SIZE = 128;
+	private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+
+	/**
+	 * @param workers - the addresses of the workers. Every worker gets its own connection.
+	 * @throws IOException if some regions couldn't be rendered, because all the workers have failed.
+	 */
+	public static BufferedImage render(Scene scene, int imgWidth, int imgHeight, double viewPlainWidth,
+			List<InetSocketAddress> workers, Logger logger) throws IOException, InterruptedException {
+		if(workers.isEmpty())
+			throw new IllegalArgumentException("No workers were given");
+		byte[] sceneJson = GsonMaker.getInstance().toJson(scene, Scene.class).getBytes(StandardCharsets.UTF_8);
+
+		BlockingQueue<int[]> regions = new LinkedBlockingQueue<>();
+		for (int y = 0; y < imgHeight; y += REGION_SIZE)
+			for (int x = 0; x < imgWidth; x += REGION_SIZE)
+				regions.add(new int[] { x, y, Math.min(x + REGION_SIZE, imgWidth), Math.min(y + REGION_SIZE, imgHeight) });
+		AtomicInteger pending = new AtomicInteger(regions.size());
+		logger.log("Rendering " + scene.getName() + " in " + regions.size() + " regions on " + workers.size() +
+				" workers (" + sceneJson.length + " bytes of scene).");
+
+		BufferedImage img = new BufferedImage(imgWidth, imgHeight, BufferedImage.TYPE_INT_RGB);
+		int[] raster = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+		List<Thread> threads = new ArrayList<>();
+		for (InetSocketAddress worker : workers) {
+			Thread thread = new Thread(() -> serve(worker, sceneJson, imgWidth, imgHeight, viewPlainWidth,
+					regions, pending, raster, logger), "coordinator " + worker);
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread : threads)
+			thread.join();
+
+		if(pending.get() > 0)
+			throw new IOException(pending.get() + " regions of " + scene.getName() +
+					" couldn't be rendered, all the workers have failed");
+		return img;
+	}
+
+	/**
+	 * Hands regions to a single worker until all the regions are rendered, or until the worker fails.
+	 */
+	private static void serve(InetSocketAddress worker, byte[] sceneJson, int imgWidth, int imgHeight,
+			double viewPlainWidth, BlockingQueue<int[]> regions, AtomicInteger pending, int[] raster, Logger logger) {
+		long start = System.nanoTime();
+		int rendered = 0;
+		try (Socket socket = new Socket()) {
+			socket.connect(worker, CONNECT_TIMEOUT_MILLIS);
+			socket.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			out.writeInt(Protocol.MAGIC);
+			out.writeInt(Protocol.VERSION);
+			out.writeInt(sceneJson.length);
+			out.write(sceneJson);
+			out.writeInt(imgWidth);
+			out.writeInt(imgHeight);
+			out.writeDouble(viewPlainWidth);
+			out.flush();
+			if(in.readInt() != Protocol.OK)
+				throw new IOException("The worker couldn't load the scene: " + in.readUTF());
+
+			while (pending.get() > 0) {
+				//a region that is rendered by another worker may still come back, if that worker fails
+				int[] region = regions.poll(50, TimeUnit.MILLISECONDS);
+				if(region == null)
+					continue;
+				try {
+					render(region, in, out, imgWidth, raster);
+				} catch(IOException e) {
+					regions.add(region);
+					throw e;
+				}
+				pending.decrementAndGet();
+				++rendered;
+			}
+			out.writeInt(Protocol.END);
+			out.flush();
+			logger.log("Worker " + worker + " has rendered " + rendered + " regions in " +
+					(System.nanoTime() - start) / 1000000 + "ms.");
+		} catch(IOException e) {
+			logger.log("Worker " + worker + " has failed after " + rendered + " regions: " + e.getMessage());
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void render(int[] region, DataInputStream in, DataOutputStream out, int imgWidth, int[] raster)
+			throws IOException {
+		int x0 = region[0], y0 = region[1], x1 = region[2], y1 = region[3];
+		out.writeInt(x0);
+		out.writeInt(y0);
+		out.writeInt(x1);
+		out.writeInt(y1);
+		out.flush();
+		if(in.readInt() != Protocol.OK)
+			throw new IOException("The worker couldn't render a region: " + in.readUTF());
+		int width = x1 - x0;
+		int[] pixels = Protocol.readPixels(in, width * (y1 - y0));
+		for (int y = y0; y < y1; y++)
+			System.arraycopy(pixels, (y - y0) * width, raster, y * imgWidth + x0, width);
+	}
+
+	/**
+	 * Worker processes on the local machine, for the coordinator to connect to.
+	 */
+	public static class LocalWorkers implements AutoCloseable {
+		private final List<Process> processes = new ArrayList<>();
+		private final List<InetSocketAddress> addresses = new ArrayList<>();
+
+		/**
+		 * Starts the given number of worker processes, with the class path of this process.
+		 * @param nThreads - the number of rendering threads of every worker.
+		 */
+		public LocalWorkers(int nWorkers, int nThreads) throws IOException {
+			String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+			try {
+				for (int i = 0; i < nWorkers; i++) {
+					Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+							RenderWorker.class.getName(), "-threads", String.valueOf(nThreads))
+							.redirectError(ProcessBuilder.Redirect.INHERIT).start();
+					processes.add(process);
+					BufferedReader reader = new BufferedReader(
+							new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+					String line = reader.readLine();
+					if(line == null || !line.startsWith(RenderWorker.LISTENING))
+						throw new IOException("A local worker couldn't start: " + line);
+					int port = Integer.parseInt(line.substring(RenderWorker.LISTENING.length()).trim());
+					addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+				}
+			} catch(IOException | RuntimeException e) {
+				close();
+				throw e;
+			}
+		}
+
+		public List<InetSocketAddress> addresses() {
+			return addresses;
+		}
+
+		@Override
+		public void close() {
+			for (Process process : processes)
+				process.destroy();
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package edu.cg.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import edu.cg.Logger;
+import edu.cg.scene.Scene;
+import edu.cg.scene.io.JsonSceneReader;
+
+/**
+ * A worker of a distributed rendering: gets a scene from a coordinator (see RenderCoordinator),
+ * renders the regions of the image that it is assigned, and streams their pixels back.
+ * Usage: RenderWorker [-port port] [-bind address] [-threads n]
+ * The worker prints the port that it listens on (port 0, the default, picks a free one),
+ * and serves the coordinators one after the other. It listens on the loopback address,
+ * unless another address (e.g. 0.0.0.0) is given.
+ */
+public class RenderWorker {
+	static final String LISTENING = "RenderWorker listening on port ";
+
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+
+		int port = 0;
+		InetAddress address = InetAddress.getLoopbackAddress();
+		int nThreads = Scene.defaultThreadsCount();
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch(args[i]) {
+			case "-port":
+				port = Integer.parseInt(args[i + 1]);
+				break;
+			case "-bind":
+				address = InetAddress.getByName(args[i + 1]);
+				break;
+			case "-threads":
+				nThreads = Integer.parseInt(args[i + 1]);
+				break;
+			default:
+				System.err.println("Unknown option: " + args[i]);
+				System.exit(2);
+			}
+		}
+
+		try (ServerSocket server = new ServerSocket(port, 50, address)) {
+			System.out.println(LISTENING + server.getLocalPort());
+			System.out.flush();
+			Logger logger = s -> System.err.println("[worker " + server.getLocalPort() + "] " + s);
+			while (true) {
+				try (Socket socket = server.accept()) {
+					serve(socket, nThreads, logger);
+				} catch(IOException e) {
+					logger.log("The session has failed: " + e);
+				}
+			}
+		}
+	}
+
+	private static void serve(Socket socket, int nThreads, Logger logger) throws IOException {
+		socket.setTcpNoDelay(true);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		if(in.readInt() != Protocol.MAGIC)
+			throw new IOException("Not a coordinator: " + socket.getRemoteSocketAddress());
+		int version = in.readInt();
+		if(version != Protocol.VERSION)
+			throw new IOException("Unsupported protocol version: " + version);
+		byte[] sceneJson = new byte[in.readInt()];
+		in.readFully(sceneJson);
+		int imgWidth = in.readInt();
+		int imgHeight = in.readInt();
+		double viewPlainWidth = in.readDouble();
+
+		Scene scene;
+		try {
+			scene = JsonSceneReader.read(new InputStreamReader(new ByteArrayInputStream(sceneJson), StandardCharsets.UTF_8),
+					"from " + socket.getRemoteSocketAddress());
+		} catch(IOException e) {
+			out.writeInt(Protocol.FAILED);
+			out.writeUTF(e.getMessage());
+			out.flush();
+			return;
+		}
+		out.writeInt(Protocol.OK);
+		out.flush();
+
+		try (Scene.RegionRenderer renderer = scene.regionRenderer(imgWidth, imgHeight, viewPlainWidth, nThreads, logger)) {
+			while (true) {
+				int x0 = in.readInt();
+				if(x0 == Protocol.END)
+					break;
+				int y0 = in.readInt(), x1 = in.readInt(), y1 = in.readInt();
+				int[] pixels;
+				try {
+					pixels = renderer.render(x0, y0, x1, y1);
+				} catch(Exception e) {
+					out.writeInt(Protocol.FAILED);
+					out.writeUTF(String.valueOf(e));
+					out.flush();
+					continue;
+				}
+				out.writeInt(Protocol.OK);
+				Protocol.writePixels(out, pixels);
+				out.flush();
+			}
+		}
+	}
+}
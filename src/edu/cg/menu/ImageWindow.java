@@ -66,6 +66,13 @@ public class ImageWindow extends JFrame {
 		}
 	}
 	
+	/**
+	 * Repaints the image, after it has been updated (e.g. by a pass of a progressive rendering).
+	 */
+	public void refresh() {
+		repaint();
+	}
+	
 	private void save(File file) {
 		try {
 			ImageIO.write(img, "png", file);
@@ -8,11 +8,13 @@ import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 import javax.swing.border.EmptyBorder;
 
 import edu.cg.Logger;
 import edu.cg.menu.components.ScenesCreator;
 import edu.cg.menu.components.ScenesPicker;
+import edu.cg.scene.ProgressListener;
 import edu.cg.scene.Scene;
 import edu.cg.menu.components.LogField;
 import edu.cg.menu.components.RenderingParametersSelector;
@@ -58,15 +60,10 @@ public class MenuWindow extends JFrame implements Logger {
 			if(!renderingParametersSelector.readParameters(scene, MenuWindow.this))
 				return;
 			
-			try {
-				BufferedImage img = scene.render(width, height, viewPlainWidth,MenuWindow.this);
-				present(img);
-			} catch(Exception ex) {
-				String msg = "Couldn't render " + scene.getName() + System.lineSeparator() + 
-						"Exception message: " + ex.getMessage();
-				log(msg);
-				JOptionPane.showMessageDialog(MenuWindow.this, msg, "Error", JOptionPane.ERROR_MESSAGE);
-			}
+			//The scene is rendered in the background, so the window keeps presenting the passes.
+			btnRender.setEnabled(false);
+			Scene scene = this.scene;
+			new Thread(() -> render(scene, width, height, viewPlainWidth), "Renderer").start();
 		});
 		
 		renderingParametersSelector.add(btnRender);
@@ -100,6 +97,45 @@ public class MenuWindow extends JFrame implements Logger {
 		new ImageWindow(img, scene.getName(), this).setVisible(true);
 	}
 	
+	private void render(Scene scene, int width, int height, double viewPlainWidth) {
+		try {
+			scene.render(width, height, viewPlainWidth, Scene.defaultThreadsCount(), this,
+					new ProgressivePresenter(scene.getName()));
+		} catch(Exception ex) {
+			String msg = "Couldn't render " + scene.getName() + System.lineSeparator() + 
+					"Exception message: " + ex.getMessage();
+			log(msg);
+			SwingUtilities.invokeLater(() ->
+				JOptionPane.showMessageDialog(MenuWindow.this, msg, "Error", JOptionPane.ERROR_MESSAGE));
+		} finally {
+			SwingUtilities.invokeLater(() -> btnRender.setEnabled(true));
+		}
+	}
+	
+	/**
+	 * Presents the image in a window after the first pass, and updates it in place after the following passes.
+	 * The window is only touched in the event dispatch thread.
+	 */
+	private class ProgressivePresenter implements ProgressListener {
+		private final String title;
+		private ImageWindow imageWindow = null;
+		
+		public ProgressivePresenter(String title) {
+			this.title = title;
+		}
+		
+		@Override
+		public void passCompleted(BufferedImage img, int pass, int passes) {
+			SwingUtilities.invokeLater(() -> {
+				if(imageWindow == null) {
+					imageWindow = new ImageWindow(img, title, MenuWindow.this);
+					imageWindow.setVisible(true);
+				} else
+					imageWindow.refresh();
+			});
+		}
+	}
+	
 	//MARK: Logger
 	@Override
 	public void log(String s) {
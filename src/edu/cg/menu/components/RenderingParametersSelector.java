@@ -27,6 +27,7 @@ public class RenderingParametersSelector extends JPanel {
 	private Checkbox x1;
 	private Checkbox x2;
 	private Checkbox x3;
+	private Checkbox adaptive;
 	
 	private Checkbox reflection;
 	private Checkbox refraction;
@@ -64,6 +65,10 @@ public class RenderingParametersSelector extends JPanel {
 		panel1.add(x2);
 		panel1.add(x3);
 		
+		adaptive = new Checkbox(" Adaptive");
+		adaptive.setFont(myFont);
+		panel1.add(adaptive);
+		
 		
 		JPanel panel2 = new JPanel();
 		panel2.setBorder(new EtchedBorder(EtchedBorder.LOWERED, null, null));
@@ -169,6 +174,8 @@ public class RenderingParametersSelector extends JPanel {
 		else
 			scene.initAntiAliasingFactor(3);
 
+		scene.initAdaptiveAntiAliasing(adaptive.getState());
+
 		scene.initRenderRefarctions(refraction.getState())
 		.initRenderReflections(reflection.getState());
 		
@@ -188,6 +195,7 @@ public class RenderingParametersSelector extends JPanel {
 			break;
 		}
 		
+		adaptive.setState(scene.getAdaptiveAntiAliasing());
 		recursionLevel.setValue(scene.getMaxRecursionLevel());
 		refraction.setState(scene.getRenderRefarctions());
 		reflection.setState(scene.getRenderReflections());
@@ -1,8 +1,5 @@
 package edu.cg.menu.components;
 
-import java.nio.file.Files;
-import java.nio.file.Paths;
-
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
 import javax.swing.JFileChooser;
@@ -11,11 +8,9 @@ import javax.swing.JPanel;
 import javax.swing.JTextField;
 import javax.swing.border.EtchedBorder;
 
-import com.google.gson.Gson;
-
-import edu.cg.menu.GsonMaker;
 import edu.cg.menu.MenuWindow;
 import edu.cg.scene.Scene;
+import edu.cg.scene.io.SceneFiles;
 
 @SuppressWarnings("serial")
 public class ScenesPicker extends JPanel {
@@ -51,9 +46,7 @@ public class ScenesPicker extends JPanel {
 	public void open(String filename) {
 		txtFilename.setText(filename);
 		try {
-			Gson gson = GsonMaker.getInstance();	
-			String scene1Json = new String(Files.readAllBytes(Paths.get(filename)));
-			Scene scene = gson.fromJson(scene1Json, Scene.class);
+			Scene scene = SceneFiles.load(filename);
 			menuWindow.setScene(scene);
 		} catch(Exception e) {
 			String msg = "Can't open scene!";
@@ -0,0 +1,16 @@
+package edu.cg.scene;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Receives the intermediate images of a progressive rendering.
+ */
+public interface ProgressListener {
+	/**
+	 * Called after every pass of the rendering, from the rendering thread.
+	 * @param img - the image so far. It is the same image in all the passes, the following passes keep refining it.
+	 * @param pass - the number of the completed pass, starting from 1.
+	 * @param passes - the total number of passes. The image is complete when pass == passes.
+	 */
+	public void passCompleted(BufferedImage img, int pass, int passes);
+}
@@ -0,0 +1,67 @@
+package edu.cg.scene;
+
+import java.util.Arrays;
+
+import edu.cg.algebra.Ray;
+
+/**
+ * A per thread stack of the secondary rays that are waiting to be traced, with their recursion levels and weights.
+ * The shading pushes the secondary rays of a hit instead of recursing into them, so the depth of the Java stack
+ * doesn't depend on the recursion level.
+ * The arrays are allocated once per thread and only grow.
+ */
+class RayStack {
+	private static final ThreadLocal<RayStack> stacks = ThreadLocal.withInitial(RayStack::new);
+	
+	private Ray[] rays = new Ray[16];
+	private int[] levels = new int[16];
+	private double[] weights = new double[16];
+	private int size = 0;
+	
+	private RayStack() {
+	}
+	
+	/**
+	 * @return the (empty) stack of the current thread.
+	 */
+	static RayStack get() {
+		return stacks.get();
+	}
+	
+	boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * @param level - the recursion level of the ray (the levels that are left, including the ray itself).
+	 * @param weight - the scale of the color of the ray in the color of the pixel.
+	 */
+	void push(Ray ray, int level, double weight) {
+		if(size == rays.length) {
+			int capacity = 2 * size;
+			rays = Arrays.copyOf(rays, capacity);
+			levels = Arrays.copyOf(levels, capacity);
+			weights = Arrays.copyOf(weights, capacity);
+		}
+		rays[size] = ray;
+		levels[size] = level;
+		weights[size] = weight;
+		++size;
+	}
+	
+	Ray topRay() {
+		return rays[size - 1];
+	}
+	
+	int topLevel() {
+		return levels[size - 1];
+	}
+	
+	double topWeight() {
+		return weights[size - 1];
+	}
+	
+	void pop() {
+		rays[--size] = null;
+	}
+}
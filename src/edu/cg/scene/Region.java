@@ -0,0 +1,42 @@
+package edu.cg.scene;
+
+/**
+ * A rectangle of pixels [x0, x1) X [y0, y1) of an image, and the raster of its pixels, row by row.
+ */
+final class Region {
+	final int x0, y0, x1, y1;
+
+	Region(int x0, int y0, int x1, int y1) {
+		this.x0 = x0;
+		this.y0 = y0;
+		this.x1 = x1;
+		this.y1 = y1;
+	}
+
+	int width() {
+		return x1 - x0;
+	}
+
+	int height() {
+		return y1 - y0;
+	}
+
+	int size() {
+		return width() * height();
+	}
+
+	/**
+	 * @return the index of the pixel (x, y) in the raster of the region.
+	 */
+	int index(int x, int y) {
+		return (y - y0) * width() + (x - x0);
+	}
+
+	/**
+	 * @return the region with a margin of the given number of pixels on every side, within an image of the given size.
+	 */
+	Region expand(int margin, int imgWidth, int imgHeight) {
+		return new Region(Math.max(x0 - margin, 0), Math.max(y0 - margin, 0),
+				Math.min(x1 + margin, imgWidth), Math.min(y1 + margin, imgHeight));
+	}
+}
@@ -1,30 +1,63 @@
 package edu.cg.scene;
 
-import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 import edu.cg.Logger;
 import edu.cg.UnimplementedMethodException;
 import edu.cg.algebra.*;
+import edu.cg.scene.accel.BVH;
+import edu.cg.scene.accel.RayPacket;
 import edu.cg.scene.camera.PinholeCamera;
 import edu.cg.scene.lightSources.Light;
+import edu.cg.scene.lightSources.LightGrid;
+import edu.cg.scene.lightSources.LightTree;
+import edu.cg.scene.lightSources.PointLight;
 import edu.cg.scene.objects.Intersectable;
+import edu.cg.scene.objects.Material;
+import edu.cg.scene.objects.MaterialTable;
+import edu.cg.scene.objects.ShadingKernel;
+import edu.cg.scene.objects.Sphere;
 import edu.cg.scene.objects.Surface;
+import edu.cg.scene.stats.Counters;
+import edu.cg.scene.stats.RenderStats;
 
 public class Scene {
+	//Scenes with at least this number of spheres intersect them in packed batches.
+	private static final int SPHERE_BATCH_THRESHOLD = 64;
+	//The first pass of a progressive rendering shoots a single pixel per block of this size.
+	private static final int PREVIEW_BLOCK_SIZE = 8;
+	//With russian roulette, secondary rays whose throughput is below this value may be killed.
+	private static final double ROULETTE_THRESHOLD = 0.1;
+	//The pixels of a tile are shot in square groups of this size, so the primary rays of a packet are coherent.
+	private static final int PACKET_WIDTH = 8;
+	//A refitted hierarchy whose nodes are this many times bigger than the ones of the built hierarchy is built again.
+	private static final double REBUILD_THRESHOLD = 2.0;
+	
 	private String name = "scene";
 	private int maxRecursionLevel = 1;
 	private int antiAliasingFactor = 1; //gets the values of 1, 2 and 3
 	private boolean renderRefarctions = false;
 	private boolean renderReflections = false;
+	private boolean adaptiveAntiAliasing = false;
+	private double adaptiveThreshold = 0.05; //the color difference between neighbors that is refined
+	private double minThroughput = 1.0 / 256; //secondary rays with a lower accumulated weight are not shot
+	private boolean russianRoulette = false;
+	private boolean packetTracing = true; //trace the primary rays in packets
+	private double lightCutoff = 0; //lights whose contribution to a hit is below this are skipped (0 skips none)
+	private int lightSamples = 0; //the number of point lights that are sampled per hit (0 shades all of them)
+	private boolean shadowCache = true; //test the last blocker of every light first
+	private boolean singlePrecision = false; //traverse the BVH and intersect the packed spheres in floats
 	
 	private PinholeCamera camera;
 	private Vec ambient = new Vec(1, 1, 1); //white
@@ -39,6 +72,11 @@ public class Scene {
 		return this;
 	}
 	
+	public Scene initCamera(PinholeCamera camera) {
+		this.camera = camera;
+		return this;
+	}
+	
 	public Scene initAmbient(Vec ambient) {
 		this.ambient = ambient;
 		return this;
@@ -84,6 +122,51 @@ public class Scene {
 		return this;
 	}
 	
+	public Scene initAdaptiveAntiAliasing(boolean adaptiveAntiAliasing) {
+		this.adaptiveAntiAliasing = adaptiveAntiAliasing;
+		return this;
+	}
+	
+	public Scene initAdaptiveThreshold(double adaptiveThreshold) {
+		this.adaptiveThreshold = adaptiveThreshold;
+		return this;
+	}
+	
+	public Scene initMinThroughput(double minThroughput) {
+		this.minThroughput = minThroughput;
+		return this;
+	}
+	
+	public Scene initRussianRoulette(boolean russianRoulette) {
+		this.russianRoulette = russianRoulette;
+		return this;
+	}
+	
+	public Scene initPacketTracing(boolean packetTracing) {
+		this.packetTracing = packetTracing;
+		return this;
+	}
+	
+	public Scene initLightCutoff(double lightCutoff) {
+		this.lightCutoff = lightCutoff;
+		return this;
+	}
+	
+	public Scene initLightSamples(int lightSamples) {
+		this.lightSamples = lightSamples;
+		return this;
+	}
+	
+	public Scene initShadowCache(boolean shadowCache) {
+		this.shadowCache = shadowCache;
+		return this;
+	}
+	
+	public Scene initSinglePrecision(boolean singlePrecision) {
+		this.singlePrecision = singlePrecision;
+		return this;
+	}
+	
 	//MARK: getters
 	public String getName() {
 		return name;
@@ -105,6 +188,69 @@ public class Scene {
 		return renderReflections;
 	}
 	
+	public boolean getAdaptiveAntiAliasing() {
+		return adaptiveAntiAliasing;
+	}
+	
+	public double getAdaptiveThreshold() {
+		return adaptiveThreshold;
+	}
+	
+	public double getMinThroughput() {
+		return minThroughput;
+	}
+	
+	public boolean getRussianRoulette() {
+		return russianRoulette;
+	}
+	
+	public boolean getPacketTracing() {
+		return packetTracing;
+	}
+	
+	public double getLightCutoff() {
+		return lightCutoff;
+	}
+	
+	public int getLightSamples() {
+		return lightSamples;
+	}
+	
+	public boolean getShadowCache() {
+		return shadowCache;
+	}
+	
+	public boolean getSinglePrecision() {
+		return singlePrecision;
+	}
+	
+	public PinholeCamera getCamera() {
+		return camera;
+	}
+	
+	public Vec getAmbient() {
+		return ambient;
+	}
+	
+	public Vec getBackgroundColor() {
+		return backgroundColor;
+	}
+	
+	public List<Light> getLightSources() {
+		return Collections.unmodifiableList(lightSources);
+	}
+	
+	public List<Surface> getSurfaces() {
+		return Collections.unmodifiableList(surfaces);
+	}
+	
+	/**
+	 * @return the statistics of the last rendering of the scene, or null if it hasn't been rendered.
+	 */
+	public RenderStats getStats() {
+		return stats;
+	}
+	
 	@Override
 	public String toString() {
 		String endl = System.lineSeparator(); 
@@ -112,139 +258,755 @@ public class Scene {
 				"Ambient: " + ambient + endl +
 				"Background Color: " + backgroundColor + endl +
 				"Max recursion level: " + maxRecursionLevel + endl +
-				"Anti aliasing factor: " + antiAliasingFactor + endl +
+				"Anti aliasing factor: " + antiAliasingFactor + (adaptiveAntiAliasing ? " (adaptive)" : "") + endl +
 				"Light sources:" + endl + lightSources + endl +
 				"Surfaces:" + endl + surfaces;
 	}
 	
-	private transient ExecutorService executor = null;
+	private transient ForkJoinPool pool = null;
 	private transient Logger logger = null;
+	private transient BVH bvh = null;
+	private transient MaterialTable materials = null;
+	private transient ShadingKernel[] kernels = null; //the shading kernels of the materials, by their index
+	private transient RenderStats stats = null;
+	private transient LightGrid lightGrid = null; //null if the lights are not culled
+	private transient LightTree lightTree = null; //null if the lights are not sampled
+	private transient Light[] unsampledLights = null; //the lights that are shaded when the others are sampled
 	
 	private void initSomeFields(int imgWidth, int imgHeight, Logger logger) {
 		this.logger = logger;
+		this.materials = buildMaterialTable();
+		this.kernels = buildShadingKernels();
+		this.bvh = buildBVH();
+		this.logger.log("Built a bounding volume hierarchy of " + bvh.nodesCount() + " nodes over " +
+				bvh.size() + " surfaces.");
+		int index = 0;
+		for (Light light : lightSources)
+			light.initIndex(index++);
+		this.lightGrid = lightCutoff > 0 ? buildLightGrid() : null;
+		this.lightTree = lightSamples > 0 ? buildLightTree() : null;
+	}
+	
+	/**
+	 * Builds the tree of the point lights (and spotlights) for sampling them, unless there are no more of them
+	 * than the samples, in which case they are all shaded. The other lights (directional) are always shaded.
+	 */
+	private LightTree buildLightTree() {
+		List<PointLight> pointLights = new ArrayList<>();
+		List<Light> others = new ArrayList<>();
+		for (Light light : lightSources) {
+			if(light instanceof PointLight)
+				pointLights.add((PointLight)light);
+			else
+				others.add(light);
+		}
+		if(pointLights.size() <= lightSamples)
+			return null;
+		unsampledLights = others.toArray(new Light[0]);
+		logger.log("Sampling " + lightSamples + " of " + pointLights.size() + " point lights per hit.");
+		return new LightTree(pointLights);
+	}
+	
+	/**
+	 * Builds the grid of the lights that may contribute more than lightCutoff to the hits.
+	 * The diffuse and specular factors (N.L and (V.R)^n) are at most 1 in magnitude, so a light contributes at most
+	 * its intensity times the biggest Kd + Ks of the materials.
+	 */
+	private LightGrid buildLightGrid() {
+		double response = 0;
+		for (int i = 0; i < materials.size(); i++) {
+			Material material = materials.get(i);
+			response = Math.max(response, Math.abs(material.Kd.x) + Math.abs(material.Ks.x));
+			response = Math.max(response, Math.abs(material.Kd.y) + Math.abs(material.Ks.y));
+			response = Math.max(response, Math.abs(material.Kd.z) + Math.abs(material.Ks.z));
+		}
+		LightGrid grid = new LightGrid(lightSources, lightCutoff / response);
+		logger.log("Placed " + grid.boundedCount() + " of " + grid.lightsCount() + " lights in a grid of " +
+				grid.cellsCount() + " cells.");
+		return grid;
+	}
+	
+	/**
+	 * Interns the materials of the surfaces, so surfaces with equal materials share a single entry of the table,
+	 * and the hits refer to it by its index. The materials of the surfaces are not replaced, so they may be
+	 * edited between renders.
+	 */
+	private MaterialTable buildMaterialTable() {
+		MaterialTable materials = new MaterialTable();
+		for (Surface surface : surfaces)
+			surface.initMaterialIndex(materials.intern(surface.material()));
+		logger.log("Interned the materials of " + surfaces.size() + " surfaces into " + materials.size() +
+				" distinct materials.");
+		return materials;
+	}
+	
+	private ShadingKernel[] buildShadingKernels() {
+		ShadingKernel[] kernels = new ShadingKernel[materials.size()];
+		for (int i = 0; i < kernels.length; i++)
+			kernels[i] = new ShadingKernel(materials.get(i), ambient);
+		return kernels;
+	}
+	
+	private BVH buildBVH() {
+		int spheres = 0;
+		for (Surface surface : surfaces)
+			if(surface.shape() instanceof Sphere)
+				++spheres;
+		
+		//the spheres are intersected in floats only when they are packed, so they are always packed in single precision
+		boolean packSpheres = spheres >= SPHERE_BATCH_THRESHOLD || (singlePrecision && spheres > 0);
+		BVH bvh = new BVH(surfaces, packSpheres, singlePrecision);
+		if(bvh.packedSpheresCount() > 0)
+			logger.log("Packed " + bvh.packedSpheresCount() + " spheres into flat arrays" +
+					(singlePrecision ? " of floats." : "."));
+		return bvh;
 	}
 	
 	
+	/**
+	 * @return the number of threads that are used to render when it is not specified.
+	 */
+	public static int defaultThreadsCount() {
+		int nThreads = Runtime.getRuntime().availableProcessors();
+		return nThreads < 2 ? 2 : nThreads;
+	}
+	
 	public BufferedImage render(int imgWidth, int imgHeight, double viewPlainWidth,Logger logger)
 			throws InterruptedException, ExecutionException {
-
-		initSomeFields(imgWidth, imgHeight, logger);
+		return render(imgWidth, imgHeight, viewPlainWidth, defaultThreadsCount(), logger);
+	}
+	
+	/**
+	 * Renders the scene using the given number of threads.
+	 */
+	public BufferedImage render(int imgWidth, int imgHeight, double viewPlainWidth, int nThreads, Logger logger)
+			throws InterruptedException, ExecutionException {
+		return render(imgWidth, imgHeight, viewPlainWidth, nThreads, logger, null);
+	}
+	
+	/**
+	 * Renders the scene progressively: the first pass shoots a single pixel per 8x8 block and fills the block with it,
+	 * and every following pass halves the blocks, until all the pixels are shot.
+	 * Every pixel is still shot exactly once, so the final image is the same as the one of a regular rendering.
+	 * With adaptive anti aliasing, the passes shoot a single ray per pixel, and a last pass supersamples only
+	 * the pixels that differ from their neighbors.
+	 * @param listener - gets the image after every pass. If null, the scene is rendered in a single pass.
+	 */
+	public BufferedImage render(int imgWidth, int imgHeight, double viewPlainWidth, int nThreads, Logger logger,
+			ProgressListener listener) throws InterruptedException, ExecutionException {
+		prepare(imgWidth, imgHeight, viewPlainWidth, nThreads, logger);
 		
 		BufferedImage img = new BufferedImage(imgWidth, imgHeight, BufferedImage.TYPE_INT_RGB);
-		camera.initResolution(imgHeight, imgWidth, viewPlainWidth);
-		int nThreads = Runtime.getRuntime().availableProcessors();
-		nThreads = nThreads < 2 ? 2 : nThreads;
-		this.logger.log("Intitialize executor. Using " + nThreads + " threads to render " + name);
-		executor = Executors.newFixedThreadPool(nThreads);
+		//TYPE_INT_RGB images are backed by a single int per pixel, so the tiles write the pixels directly.
+		int[] raster = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+		Region image = new Region(0, 0, imgWidth, imgHeight);
+		try {
+			renderRegion(raster, image, image, imgWidth, imgHeight, nThreads, img, listener);
+		} finally {
+			pool.shutdown();
+		}
+		finish();
+		return img;
+	}
+	
+	/**
+	 * Renders regions of an image one after the other, e.g. the regions that a worker of a distributed rendering
+	 * gets. The scene is prepared once, and the pixels of every region are the same as the ones of render.
+	 */
+	public class RegionRenderer implements AutoCloseable {
+		private final int imgWidth, imgHeight, nThreads;
 		
-		@SuppressWarnings("unchecked")
-		Future<Color>[][] futures = (Future<Color>[][])(new Future[imgHeight][imgWidth]);
+		private RegionRenderer(int imgWidth, int imgHeight, int nThreads) {
+			this.imgWidth = imgWidth;
+			this.imgHeight = imgHeight;
+			this.nThreads = nThreads;
+		}
 		
-		this.logger.log("Starting to shoot " +
-			(imgHeight*imgWidth*antiAliasingFactor*antiAliasingFactor) +
-			" rays over " + name);
+		/**
+		 * Renders the pixels [x0, x1) X [y0, y1) of the image.
+		 * @return the RGB colors of the pixels, row by row.
+		 */
+		public int[] render(int x0, int y0, int x1, int y1) throws InterruptedException, ExecutionException {
+			if(x0 < 0 | y0 < 0 | x1 > imgWidth | y1 > imgHeight | x0 >= x1 | y0 >= y1)
+				throw new IllegalArgumentException("Illegal region [" + x0 + ", " + x1 + ") X [" + y0 + ", " + y1 + ")");
+			Region region = new Region(x0, y0, x1, y1);
+			//the adaptive anti aliasing compares the pixels with their neighbors, which may be out of the region
+			boolean adaptive = adaptiveAntiAliasing && antiAliasingFactor > 1;
+			Region area = adaptive ? region.expand(1, imgWidth, imgHeight) : region;
+			int[] raster = new int[area.size()];
+			renderRegion(raster, area, region, imgWidth, imgHeight, nThreads, null, null);
+			if(area == region)
+				return raster;
+			int[] pixels = new int[region.size()];
+			for(int y = y0; y < y1; ++y)
+				System.arraycopy(raster, area.index(x0, y), pixels, region.index(x0, y), region.width());
+			return pixels;
+		}
 		
-		for(int y = 0; y < imgHeight; ++y)
-			for(int x = 0; x < imgWidth; ++x)
-				futures[y][x] = calcColor(x, y);
+		@Override
+		public void close() {
+			pool.shutdown();
+			finish();
+		}
+	}
+	
+	/**
+	 * Renders the frames of an animation one after the other. The scene is prepared once, so the threads and
+	 * the material table are reused by all the frames, and the bounding volume hierarchy is refitted to the
+	 * surfaces that have moved between the frames, instead of being built again. Only when the refitted
+	 * hierarchy gets much worse than a new one would be, it is built again.
+	 * The surfaces may move and the camera may change between the frames, but no surfaces may be added or removed.
+	 */
+	public class FrameRenderer implements AutoCloseable {
+		private final int imgWidth, imgHeight, nThreads;
+		private final double viewPlainWidth;
+		private int frames = 0;
 		
-		this.logger.log("Done shooting rays.");
-		this.logger.log("Wating for results...");
+		private FrameRenderer(int imgWidth, int imgHeight, double viewPlainWidth, int nThreads) {
+			this.imgWidth = imgWidth;
+			this.imgHeight = imgHeight;
+			this.viewPlainWidth = viewPlainWidth;
+			this.nThreads = nThreads;
+		}
 		
-		for(int y = 0; y < imgHeight; ++y)
-			for(int x = 0; x < imgWidth; ++x) {
-				Color color = futures[y][x].get();
-				img.setRGB(x, y, color.getRGB());
+		/**
+		 * Renders the scene as it is now: with its current camera and the current geometry of its surfaces.
+		 */
+		public BufferedImage render() throws InterruptedException, ExecutionException {
+			if(frames++ > 0) {
+				double growth = bvh.refit();
+				if(growth > REBUILD_THRESHOLD) {
+					logger.log("The refitted hierarchy grew " + String.format("%.2f", growth) +
+							" times bigger than the built one, building it again.");
+					bvh = buildBVH();
+				}
 			}
+			camera.initResolution(imgHeight, imgWidth, viewPlainWidth);
+			
+			BufferedImage img = new BufferedImage(imgWidth, imgHeight, BufferedImage.TYPE_INT_RGB);
+			int[] raster = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+			Region image = new Region(0, 0, imgWidth, imgHeight);
+			renderRegion(raster, image, image, imgWidth, imgHeight, nThreads, null, null);
+			return img;
+		}
+		
+		@Override
+		public void close() {
+			pool.shutdown();
+			finish();
+		}
+	}
+	
+	/**
+	 * Prepares the scene for rendering the frames of an animation, with the surfaces as they are in the first frame.
+	 * The returned renderer must be closed when the rendering is done.
+	 */
+	public FrameRenderer frameRenderer(int imgWidth, int imgHeight, double viewPlainWidth, int nThreads,
+			Logger logger) {
+		prepare(imgWidth, imgHeight, viewPlainWidth, nThreads, logger);
+		return new FrameRenderer(imgWidth, imgHeight, viewPlainWidth, nThreads);
+	}
+	
+	/**
+	 * Renders the scene again and again, e.g. at different resolutions, on a pool that is shared with other scenes.
+	 * The material table and the bounding volume hierarchy are built once, when the renderer is created,
+	 * so a render only sets the resolution of the camera and shoots the rays.
+	 * The renders of a scene are serialized (they share its camera and statistics), but different scenes
+	 * may be rendered concurrently on the same pool.
+	 */
+	public class SharedRenderer {
+		private final ForkJoinPool sharedPool;
 		
-		executor.shutdown();
+		private SharedRenderer(ForkJoinPool sharedPool) {
+			this.sharedPool = sharedPool;
+		}
+		
+		public Scene scene() {
+			return Scene.this;
+		}
+		
+		public BufferedImage render(int imgWidth, int imgHeight, double viewPlainWidth, Logger logger)
+				throws InterruptedException, ExecutionException {
+			synchronized (Scene.this) {
+				Scene.this.logger = logger;
+				camera.initResolution(imgHeight, imgWidth, viewPlainWidth);
+				stats = new RenderStats();
+				pool = sharedPool;
+				
+				BufferedImage img = new BufferedImage(imgWidth, imgHeight, BufferedImage.TYPE_INT_RGB);
+				int[] raster = ((DataBufferInt)img.getRaster().getDataBuffer()).getData();
+				Region image = new Region(0, 0, imgWidth, imgHeight);
+				try {
+					renderRegion(raster, image, image, imgWidth, imgHeight, sharedPool.getParallelism(), null, null);
+				} finally {
+					finish();
+				}
+				return img;
+			}
+		}
+	}
+	
+	/**
+	 * Builds the material table and the bounding volume hierarchy of the scene, for rendering it on the given pool.
+	 * The pool isn't shut down by the renderer.
+	 */
+	public SharedRenderer sharedRenderer(ForkJoinPool pool, Logger logger) {
+		synchronized (this) {
+			initSomeFields(0, 0, logger);
+			this.logger = null;
+		}
+		return new SharedRenderer(pool);
+	}
+	
+	/**
+	 * Prepares the scene for rendering regions of an image of the given size.
+	 * The returned renderer must be closed when the rendering is done.
+	 */
+	public RegionRenderer regionRenderer(int imgWidth, int imgHeight, double viewPlainWidth, int nThreads,
+			Logger logger) {
+		prepare(imgWidth, imgHeight, viewPlainWidth, nThreads, logger);
+		return new RegionRenderer(imgWidth, imgHeight, nThreads);
+	}
+	
+	private void prepare(int imgWidth, int imgHeight, double viewPlainWidth, int nThreads, Logger logger) {
+		if(nThreads < 1)
+			throw new IllegalArgumentException("Threads count must be positive");
 		
+		initSomeFields(imgWidth, imgHeight, logger);
+		camera.initResolution(imgHeight, imgWidth, viewPlainWidth);
+		stats = new RenderStats();
+		this.logger.log("Intitialize fork join pool. Using " + nThreads + " threads to render " + name);
+		pool = new ForkJoinPool(nThreads);
+	}
+	
+	private void finish() {
 		this.logger.log("Ray tracing of " + name + " has been completed.");
+		this.logger.log(stats.getReport());
 		
-		executor = null;
+		pool = null;
 		this.logger = null;
+	}
+	
+	/**
+	 * Renders the pixels of a region into the raster of an area that contains it.
+	 * With adaptive anti aliasing the centers of all the pixels of the area are shot, and only the pixels of the
+	 * region are refined, so the area should include the neighbors of the region.
+	 * @param img - the image of the raster, for the listener.
+	 */
+	private void renderRegion(int[] raster, Region area, Region region, int imgWidth, int imgHeight, int nThreads,
+			BufferedImage img, ProgressListener listener) throws InterruptedException, ExecutionException {
+		boolean adaptive = adaptiveAntiAliasing && antiAliasingFactor > 1;
+		//the surfaces that are seen through the centers of the pixels, for the adaptive anti aliasing
+		Surface[] centerSurfaces = adaptive ? new Surface[area.size()] : null;
+		TileScheduler areaTiles = new TileScheduler(area, nThreads);
 		
-		return img;
+		int firstBlock = listener == null ? 1 : PREVIEW_BLOCK_SIZE;
+		int passes = Integer.numberOfTrailingZeros(firstBlock) + 1 + (adaptive ? 1 : 0);
+		//every pixel of the area is shot once over the passes, with a single ray if it may be supersampled later
+		this.logger.log("Starting to shoot " + (long)area.size() * camera.samplesPerPixel(adaptive ? 1 : antiAliasingFactor) +
+			" rays over " + name + " in " + areaTiles.tilesCount() + " tiles of " + areaTiles.tileSize() + "x" +
+			areaTiles.tileSize() + " pixels" + (passes > 1 ? " and " + passes + " passes" : ""));
+		int pass = 1;
+		for(int block = firstBlock; block >= 1; block /= 2, ++pass) {
+			int blockSize = block;
+			pool.submit(areaTiles.task((x0, y0, x1, y1) ->
+				renderTile(raster, area, centerSurfaces, blockSize, firstBlock, x0, y0, x1, y1))).get();
+			passCompleted(img, pass, passes, listener);
+		}
+		
+		if(adaptive) {
+			int[] centers = raster.clone();
+			LongAdder refined = new LongAdder();
+			pool.submit(new TileScheduler(region, nThreads).task((x0, y0, x1, y1) ->
+				refineTile(raster, area, centers, centerSurfaces, imgWidth, imgHeight, refined, x0, y0, x1, y1))).get();
+			this.logger.log("Supersampled " + refined.sum() + " of " + region.size() + " pixels with " +
+					(antiAliasingFactor * antiAliasingFactor) + " rays each.");
+			passCompleted(img, pass, passes, listener);
+		}
 	}
 	
-	private Future<Color> calcColor(int x, int y) {
-		return executor.submit(() -> {
-			Vec color = new Vec();
-			if(antiAliasingFactor == 1){
-				Point centerPoint = camera.transform(x, y);
-				Ray ray = new Ray(camera.getCameraPosition(), centerPoint);
-				color = calcColor(ray, maxRecursionLevel );
-			}else{
-				List<Vec> colors = new LinkedList<>();
-				List<Point> Points = camera.transformAntiAliasing(x, y , antiAliasingFactor);
-				for (Point point :Points ) {
-					Ray ray = new Ray(camera.getCameraPosition(), point);
-					colors.add(calcColor(ray, maxRecursionLevel ));
-				}
-				for (Vec vector : colors) {
-					color = color.add(vector);
+	private void passCompleted(BufferedImage img, int pass, int passes, ProgressListener listener) {
+		if(listener != null) {
+			this.logger.log("Pass " + pass + " of " + passes + " over " + name + " has been completed.");
+			listener.passCompleted(img, pass, passes);
+		}
+	}
+	
+	//The slots of the thread's scratch that are used by the shading:
+	//the local color of a hit, the color of a sample, the color of a pixel and the intensity of a light.
+	private static final int LOCAL_SLOT = 0;
+	private static final int SAMPLE_SLOT = 1;
+	private static final int PIXEL_SLOT = 2;
+	private static final int LIGHT_SLOT = 3;
+	private static final int CONTRIBUTION_SLOT = 4;
+	//the double slot of the probability of a sampled light (the double slot 0 is the one of the BVH)
+	private static final int PDF_SLOT = 1;
+	
+	/**
+	 * Shoots the pixels of the tile whose coordinates are multiples of the block size,
+	 * and fills a block of that size with the color of each.
+	 * Pixels that have been shot in a previous pass (multiples of twice the block size) are skipped.
+	 * @param centerSurfaces - if not null, only the centers of the pixels are shot, and the surfaces that they hit
+	 * are recorded in this array (for the adaptive anti aliasing).
+	 */
+	private void renderTile(int[] raster, Region area, Surface[] centerSurfaces, int block,
+			int firstBlock, int x0, int y0, int x1, int y1) {
+		long start = System.nanoTime();
+		int[] xs = new int[(x1 - x0) * (y1 - y0)];
+		int[] ys = new int[xs.length];
+		int n = 0;
+		int coarser = 2 * block;
+		int step = block * PACKET_WIDTH;
+		for(int gy = firstMultiple(y0, block); gy < y1; gy += step)
+			for(int gx = firstMultiple(x0, block); gx < x1; gx += step)
+				for(int y = gy; y < Math.min(gy + step, y1); y += block)
+					for(int x = gx; x < Math.min(gx + step, x1); x += block) {
+						if(block < firstBlock && x % coarser == 0 && y % coarser == 0)
+							continue;
+						xs[n] = x;
+						ys[n++] = y;
+					}
+		
+		int[] rgbs = new int[n];
+		shadePixels(xs, ys, n, centerSurfaces, area, rgbs);
+		for(int i = 0; i < n; ++i) {
+			int xEnd = Math.min(xs[i] + block, area.x1);
+			int yEnd = Math.min(ys[i] + block, area.y1);
+			for(int by = ys[i]; by < yEnd; ++by)
+				for(int bx = xs[i]; bx < xEnd; ++bx)
+					raster[area.index(bx, by)] = rgbs[i];
+		}
+		stats.add(Counters.get());
+		stats.addTile(System.nanoTime() - start);
+	}
+	
+	private static int firstMultiple(int from, int block) {
+		return (from + block - 1) / block * block;
+	}
+	
+	/**
+	 * Supersamples the pixels of the tile that differ from one of their neighbors:
+	 * either a different surface is seen through their centers, or their colors differ beyond the threshold.
+	 * The other pixels keep the color of their centers.
+	 * @param area - the area of the raster, which includes the neighbors of the tile that are in the image.
+	 */
+	private void refineTile(int[] raster, Region area, int[] centers, Surface[] centerSurfaces, int imgWidth,
+			int imgHeight, LongAdder refined, int x0, int y0, int x1, int y1) {
+		long start = System.nanoTime();
+		int[] xs = new int[(x1 - x0) * (y1 - y0)];
+		int[] ys = new int[xs.length];
+		int n = 0;
+		int threshold = (int)(adaptiveThreshold * 255);
+		int stride = area.width();
+		for(int gy = y0; gy < y1; gy += PACKET_WIDTH)
+			for(int gx = x0; gx < x1; gx += PACKET_WIDTH)
+				for(int y = gy; y < Math.min(gy + PACKET_WIDTH, y1); ++y)
+					for(int x = gx; x < Math.min(gx + PACKET_WIDTH, x1); ++x) {
+						int i = area.index(x, y);
+						if((x > 0 && differ(centers, centerSurfaces, i, i - 1, threshold)) ||
+								(x + 1 < imgWidth && differ(centers, centerSurfaces, i, i + 1, threshold)) ||
+								(y > 0 && differ(centers, centerSurfaces, i, i - stride, threshold)) ||
+								(y + 1 < imgHeight && differ(centers, centerSurfaces, i, i + stride, threshold))) {
+							xs[n] = x;
+							ys[n++] = y;
+						}
+					}
+		
+		int[] rgbs = new int[n];
+		shadePixels(xs, ys, n, null, area, rgbs);
+		for(int i = 0; i < n; ++i)
+			raster[area.index(xs[i], ys[i])] = rgbs[i];
+		refined.add(n);
+		stats.add(Counters.get());
+		stats.addTile(System.nanoTime() - start);
+	}
+	
+	private static boolean differ(int[] centers, Surface[] centerSurfaces, int i, int j, int threshold) {
+		if(centerSurfaces[i] != centerSurfaces[j])
+			return true;
+		int rgb1 = centers[i], rgb2 = centers[j];
+		return Math.abs(((rgb1 >> 16) & 0xFF) - ((rgb2 >> 16) & 0xFF)) > threshold ||
+				Math.abs(((rgb1 >> 8) & 0xFF) - ((rgb2 >> 8) & 0xFF)) > threshold ||
+				Math.abs((rgb1 & 0xFF) - (rgb2 & 0xFF)) > threshold;
+	}
+	
+	/**
+	 * Calculates the colors of the given pixels.
+	 * The primary rays of consecutive pixels are traced together in packets (if packet tracing is on),
+	 * and then every sample is shaded on its own.
+	 * @param centerSurfaces - if not null, a single ray is shot through the center of every pixel (even if the scene
+	 * is anti aliased), and the surface that it hits is recorded in this array, in the raster order of the area.
+	 * @param rgbs - the RGB colors of the pixels are written into this array.
+	 */
+	private void shadePixels(int[] xs, int[] ys, int n, Surface[] centerSurfaces, Region area, int[] rgbs) {
+		Scratch scratch = Scratch.get();
+		MutableVec color = scratch.vec(PIXEL_SLOT);
+		MutableVec sample = scratch.vec(SAMPLE_SLOT);
+		int factor = centerSurfaces != null ? 1 : antiAliasingFactor;
+		int samples = camera.samplesPerPixel(factor);
+		int pixelsPerPacket = Math.max(1, RayPacket.MAX_SIZE / samples);
+		RayPacket packet = new RayPacket();
+		int maxRays = pixelsPerPacket * samples;
+		Ray[] rays = new Ray[maxRays];
+		Hit[] hits = new Hit[maxRays];
+		double[] ox = new double[maxRays], oy = new double[maxRays], oz = new double[maxRays];
+		double[] dx = new double[maxRays], dy = new double[maxRays], dz = new double[maxRays];
+		
+		try {
+			for(int from = 0; from < n; from += pixelsPerPacket) {
+				int to = Math.min(from + pixelsPerPacket, n);
+				int count = camera.generateRays(xs, ys, from, to, factor, ox, oy, oz, dx, dy, dz);
+				Point source = camera.getCameraPosition();
+				for(int k = 0; k < count; ++k)
+					rays[k] = Ray.normalized(source, new Vec(dx[k], dy[k], dz[k]));
+				traceNearestHits(rays, count, packet, hits);
+				
+				for(int i = from, k = 0; i < to; ++i) {
+					if(samples == 1) {
+						if(centerSurfaces != null)
+							centerSurfaces[area.index(xs[i], ys[i])] = hits[k] == null ? null : hits[k].getSurface();
+						calcColor(rays[k], hits[k], scratch, color);
+						++k;
+					} else {
+						color.set(0, 0, 0);
+						for(int j = 0; j < samples; ++j, ++k)
+							color.add(calcColor(rays[k], hits[k], scratch, sample));
+						double aaSamples = Math.pow(antiAliasingFactor, 2);
+						color.set(color.x / aaSamples, color.y / aaSamples, color.z / aaSamples);
+					}
+					rgbs[i] = color.toRGB();
 				}
-				color.x =  color.x / Math.pow(antiAliasingFactor, 2);
-				color.y =  color.y / Math.pow(antiAliasingFactor, 2);
-				color.z =  color.z / Math.pow(antiAliasingFactor, 2);
 			}
-			return color.toColor();
-		});
+		} finally {
+			//the blockers are dropped with the tile, so they don't keep the scene reachable from the thread
+			ShadowCache.clear();
+		}
 	}
 	
-	private Vec calcColor(Ray ray, int recusionLevel) {
-
-        if(recusionLevel <= 0) return new Vec();
-
-		Hit minHit = getMinHit(ray);
-
-		if(minHit == null) return backgroundColor;
+	/**
+	 * Finds the closest hits of the given rays, in a single packet if packet tracing is on.
+	 */
+	private void traceNearestHits(Ray[] rays, int count, RayPacket packet, Hit[] hits) {
+		if(packetTracing && bvh != null && count > 1) {
+			packet.clear();
+			for(int i = 0; i < count; ++i)
+				packet.add(rays[i]);
+			bvh.nearestHits(packet, Double.MAX_EXPONENT, hits);
+		} else
+			for(int i = 0; i < count; ++i)
+				hits[i] = getMinHit(rays[i]);
+	}
+	
+	/**
+	 * Calculates the color that is seen along the given (primary) ray.
+	 * The tree of the secondary rays is evaluated iteratively: every ray adds its local color (ambient and lights),
+	 * scaled by its weight (the product of the kr, kt along its path), to the color, and pushes its secondary rays
+	 * to the ray stack of the thread, until the stack is empty.
+	 * @param minHit - the closest hit of the ray, or null if it hits nothing.
+	 * @param I - the result is written into this vector.
+	 * @return I
+	 */
+	private MutableVec calcColor(Ray ray, Hit minHit, Scratch scratch, MutableVec I) {
+		if(maxRecursionLevel <= 0) return I.set(0, 0, 0);
+		
+		Counters counters = Counters.get();
+		RayStack stack = RayStack.get();
+		MutableVec local = scratch.vec(LOCAL_SLOT);
+		I.set(shade(ray, minHit, maxRecursionLevel, 1, scratch, stack, counters, local));
+		while(!stack.isEmpty()) {
+			Ray secondaryRay = stack.topRay();
+			int recusionLevel = stack.topLevel();
+			double weight = stack.topWeight();
+			stack.pop();
+			shade(secondaryRay, getMinHit(secondaryRay), recusionLevel, weight, scratch, stack, counters, local);
+			I.addScaled(weight, local);
+		}
+		return I;
+	}
+	
+	/**
+	 * Calculates the local color of a hit: its ambient color and the color of the lights that it sees.
+	 * The secondary rays (reflection and refraction) of the hit are pushed to the stack.
+	 * @param minHit - the closest hit of the ray, or null if it hits nothing.
+	 * @param throughput - the product of the weights (kr, kt) along the path of the ray to the camera.
+	 * @param I - the local color is written into this vector.
+	 * @return I
+	 */
+	private MutableVec shade(Ray ray, Hit minHit, int recusionLevel, double throughput, Scratch scratch,
+			RayStack stack, Counters counters, MutableVec I) {
+		int depth = maxRecursionLevel - recusionLevel;
+		counters.depth(depth);
+		if(depth == 0)
+			++counters.primaryRays;
+		
+		if(minHit == null) return I.set(backgroundColor);
         Point pointOfClosestHit = ray.add(minHit.t());
+        Material material = materials.get(minHit.getMaterialIndex());
 
 		//calculate it's color
-        Vec I = new Vec();
-        Vec a = minHit.getSurface().Ka();
-        Vec b = a.mult(ambient);
-        I = I.add(b); //Ka* Iamb
+        kernels[minHit.getMaterialIndex()].ambient(I); //Ka* Iamb
 
-        for (Light lightSource : lightSources) {
-            Ray shadowRay = lightSource.rayToLight(pointOfClosestHit);
-            if(surfaces.stream().allMatch(x -> !lightSource.isOccludedBy(x, shadowRay))){
-                Vec calculateLightDependent = CalculateLightDependent(ray, minHit, shadowRay);
-                Vec Il = lightSource.intensity(pointOfClosestHit,shadowRay);
-                Vec LightSpecificVector = calculateLightDependent.mult(Il);
-                I = I.add(LightSpecificVector);
-            }
+        MutableVec Il = scratch.vec(LIGHT_SLOT);
+        if(lightTree != null) {
+            addSampledLights(ray, minHit, pointOfClosestHit, Il, scratch.vec(CONTRIBUTION_SLOT),
+                    scratch.doubles(PDF_SLOT, 1), counters, I);
+        } else if(lightGrid != null) {
+            addCulledLights(ray, minHit, pointOfClosestHit, Il, scratch.vec(CONTRIBUTION_SLOT), counters, I);
+        } else {
+            for (Light lightSource : lightSources)
+                addLight(ray, minHit, pointOfClosestHit, lightSource, Il, counters, I);
         }
 
+        double kr = renderReflections ?
+                secondaryScale(throughput, material.reflectionIntensity, recusionLevel, counters) : 0;
+        if(kr > 0) {
+            ++counters.reflectionRays;
+            stack.push(GetReflectionRay(ray, minHit, pointOfClosestHit), recusionLevel - 1, throughput * kr);
+        }
 
-		Vec Ir = GetReflectionIntensity(ray, recusionLevel, minHit);
-		double kr = minHit.getSurface().reflectionIntensity();
-		Vec c = Ir.mult(kr);
-        I = I.add(c);
-
-        if(minHit.getSurface().isTransparent()){
-			Vec It = GetRefractionIntensity(ray, recusionLevel, minHit);
-			double kt = minHit.getSurface().refractionIntensity();
-			I = I.add(It.mult(kt));
+        if(material.isTransparent && renderRefarctions){
+			double kt = secondaryScale(throughput, material.refractionIntensity, recusionLevel, counters);
+			if(kt > 0) {
+				++counters.refractionRays;
+				stack.push(GetRefractionRay(ray, minHit, pointOfClosestHit), recusionLevel - 1, throughput * kt);
+			}
 		}
 
         return I;
 	}
+	
+	/**
+	 * Checks whether the shadow ray is blocked before it reaches the light.
+	 * With the shadow cache, the primitive that blocked the last shadow ray of the light on this thread is
+	 * tested first, and only if it doesn't block the ray the whole scene is queried.
+	 */
+	private boolean isOccluded(Light lightSource, Ray shadowRay, Counters counters) {
+		if(!shadowCache || lightSource.index() < 0)
+			return lightSource.isOccludedBy(bvh, shadowRay);
+		
+		double maxT = lightSource.distanceToLight(shadowRay.source());
+		ShadowCache cache = ShadowCache.get(bvh);
+		Intersectable blocker = cache.blocker(lightSource.index());
+		if(blocker != null) {
+			++counters.tests[Counters.kindOf(blocker)];
+			if(blocker.occluded(shadowRay, maxT)) {
+				++counters.shadowCacheHits;
+				return true;
+			}
+		}
+		blocker = bvh.occluder(shadowRay, maxT);
+		if(blocker == null)
+			return false;
+		//the last blocker is kept while the light is visible, for the next shadow that it casts
+		cache.setBlocker(lightSource.index(), blocker);
+		return true;
+	}
+	
+	/**
+	 * Adds the color of the light at the hit, if it isn't occluded.
+	 */
+	private void addLight(Ray ray, Hit minHit, Point pointOfClosestHit, Light lightSource, MutableVec Il,
+			Counters counters, MutableVec I) {
+		Ray shadowRay = lightSource.rayToLight(pointOfClosestHit);
+		++counters.shadowRays;
+		if(!isOccluded(lightSource, shadowRay, counters)) {
+			lightSource.intensity(pointOfClosestHit, shadowRay, Il);
+			addLightDependent(ray, minHit, shadowRay, Il, I);
+		}
+	}
+	
+	/**
+	 * Adds the lights of the hit by sampling lightSamples point lights from the light tree, each in proportion to
+	 * its estimated contribution. The color of every sample is divided by its probability and by the number
+	 * of the samples, so the expected color is the one of shading all the lights.
+	 * @param C - a scratch vector for the contribution of a light.
+	 * @param pdf - a scratch array for the probability of a sampled light.
+	 */
+	private void addSampledLights(Ray ray, Hit minHit, Point pointOfClosestHit, MutableVec Il, MutableVec C,
+			double[] pdf, Counters counters, MutableVec I) {
+		for (Light lightSource : unsampledLights)
+			addLight(ray, minHit, pointOfClosestHit, lightSource, Il, counters, I);
+		
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		for (int sample = 0; sample < lightSamples; sample++) {
+			PointLight lightSource = lightTree.sample(pointOfClosestHit, random, pdf);
+			Ray shadowRay = lightSource.rayToLight(pointOfClosestHit);
+			++counters.shadowRays;
+			if(isOccluded(lightSource, shadowRay, counters))
+				continue;
+			lightSource.intensity(pointOfClosestHit, shadowRay, Il);
+			addLightDependent(ray, minHit, shadowRay, Il, C.set(0, 0, 0));
+			I.addScaled(1 / (lightSamples * pdf[0]), C);
+		}
+	}
+	
+	/**
+	 * Adds the lights of the grid cell of the hit. The unshadowed contribution of every light is calculated first,
+	 * and the shadow ray is shot only if it is not below lightCutoff (in every channel).
+	 * @param C - a scratch vector for the contribution of a light.
+	 */
+	private void addCulledLights(Ray ray, Hit minHit, Point pointOfClosestHit, MutableVec Il, MutableVec C,
+			Counters counters, MutableVec I) {
+		Light[] lights = lightGrid.lights(pointOfClosestHit);
+		counters.culledLights += lightGrid.lightsCount() - lights.length;
+		for (Light lightSource : lights) {
+			Ray shadowRay = lightSource.rayToLight(pointOfClosestHit);
+			lightSource.intensity(pointOfClosestHit, shadowRay, Il);
+			addLightDependent(ray, minHit, shadowRay, Il, C.set(0, 0, 0));
+			if(Math.abs(C.x) < lightCutoff & Math.abs(C.y) < lightCutoff & Math.abs(C.z) < lightCutoff) {
+				++counters.culledLights;
+				continue;
+			}
+			++counters.shadowRays;
+			if(!isOccluded(lightSource, shadowRay, counters))
+				I.add(C);
+		}
+	}
+	
+	/**
+	 * Decides whether to shoot a secondary ray. The ray is pruned if it can't add anything to the color
+	 * (no weight or no recursion level left), or if its throughput (the throughput of its parent times its weight)
+	 * is below minThroughput.
+	 * With russian roulette, rays whose throughput is low are killed randomly instead, and the survivors are scaled
+	 * by the inverse of their survival probability, so the expected color is unbiased.
+	 * @param weight - the weight of the ray (kr or kt).
+	 * @return the scale of the color of the ray, or 0 if it is pruned.
+	 */
+	private double secondaryScale(double throughput, double weight, int recusionLevel, Counters counters) {
+		if(recusionLevel <= 1 || weight <= 0)
+			return 0;
+		
+		double rayThroughput = throughput * weight;
+		if(russianRoulette) {
+			if(rayThroughput < ROULETTE_THRESHOLD) {
+				double survival = rayThroughput / ROULETTE_THRESHOLD;
+				if(ThreadLocalRandom.current().nextDouble() >= survival) {
+					++counters.prunedRays;
+					return 0;
+				}
+				return weight / survival;
+			}
+		} else if(rayThroughput < minThroughput) {
+			++counters.prunedRays;
+			return 0;
+		}
+		return weight;
+	}
 
-	private Vec GetRefractionIntensity(Ray ray, int recusionLevel, Hit minHit) {
+	private Ray GetRefractionRay(Ray ray, Hit minHit, Point hittingPoint) {
 		Vec RefractionDirection = Ops.refract(ray.direction(), minHit.getNormalToSurface(), minHit.getSurface().n1(minHit), minHit.getSurface().n2(minHit) );
-		Ray RefractionRay = new Ray(ray.add(minHit.t()),RefractionDirection);
-		return calcColor(RefractionRay ,recusionLevel - 1);
+		return new Ray(hittingPoint, RefractionDirection);
 	}
 
-	private Vec GetReflectionIntensity(Ray ray, int recusionLevel, Hit minHit) {
+	private Ray GetReflectionRay(Ray ray, Hit minHit, Point hittingPoint) {
 		Vec ReflectionDirection = Ops.reflect(ray.direction(), minHit.getNormalToSurface());
-		Ray ReflectionRay = new Ray(ray.add(minHit.t()),ReflectionDirection);
-		return calcColor(ReflectionRay,recusionLevel - 1);
+		return new Ray(hittingPoint, ReflectionDirection);
 	}
 
 	public Hit getMinHit(Ray ray) {
+		if(bvh != null)
+			return bvh.nearestHit(ray, Double.MAX_EXPONENT);
+		
 		Hit minHit = null;
 		double minT = Double.MAX_EXPONENT;
 		for (Surface surface : surfaces) {
@@ -258,18 +1020,12 @@ public class Scene {
 		return minHit;
 	}
 
-	private Vec CalculateLightDependent(Ray ray, Hit minHit, Ray shadowRay) {
-	    Vec Kd = minHit.getSurface().Kd();
-	    Vec N = minHit.getNormalToSurface();
-	    Vec L = shadowRay.direction();
-        Vec diffue = Kd.mult(N.dot(L));
-
-        Vec Ks = minHit.getSurface().Ks();
-        Vec V = ray.direction().neg();
-        //Vec R = Ops.reflect(shadowRay.direction().neg(), minHit.getNormalToSurface());
-        Vec R = Ops.reflect(shadowRay.direction(), minHit.getNormalToSurface());
-        Vec speclar = Ks.mult(Math.pow(V.dot(R),  minHit.getSurface().shininess()));
-
-        return diffue.add(speclar);
+	/**
+	 * Adds the diffuse and specular terms of the light, (Kd*(N.L) + Ks*(V.R)^n) * Il, to I,
+	 * with the shading kernel of the material of the hit.
+	 */
+	private void addLightDependent(Ray ray, Hit minHit, Ray shadowRay, MutableVec Il, MutableVec I) {
+	    kernels[minHit.getMaterialIndex()].addLightDependent(minHit.getNormalToSurface(), shadowRay.direction(),
+	    		ray.direction(), Il, I);
     }
 }
@@ -0,0 +1,58 @@
+package edu.cg.scene;
+
+import java.util.Arrays;
+
+import edu.cg.scene.objects.Intersectable;
+
+/**
+ * A per thread cache of the last blocker of the shadow rays of every light (by the index of the light).
+ * Neighboring hits are usually blocked from a light by the same surface, so testing it first
+ * answers most of the occluded shadow rays without traversing the scene.
+ * The blockers are primitives of a bounding volume hierarchy, so the cache is cleared when it is used
+ * with another hierarchy (another scene, or a new build of the same scene), and at the end of every tile,
+ * so a pooled thread doesn't keep a scene reachable after its render.
+ */
+class ShadowCache {
+	private static final ThreadLocal<ShadowCache> caches = ThreadLocal.withInitial(ShadowCache::new);
+	
+	private Object owner = null;
+	private Intersectable[] blockers = new Intersectable[16];
+	
+	private ShadowCache() {
+	}
+	
+	/**
+	 * @param owner - the hierarchy that the blockers come from.
+	 * @return the cache of the current thread.
+	 */
+	static ShadowCache get(Object owner) {
+		ShadowCache cache = caches.get();
+		if(cache.owner != owner) {
+			Arrays.fill(cache.blockers, null);
+			cache.owner = owner;
+		}
+		return cache;
+	}
+	
+	/**
+	 * Clears the cache of the current thread.
+	 */
+	static void clear() {
+		ShadowCache cache = caches.get();
+		Arrays.fill(cache.blockers, null);
+		cache.owner = null;
+	}
+	
+	/**
+	 * @return the last blocker of the light, or null if there is none.
+	 */
+	Intersectable blocker(int light) {
+		return light < blockers.length ? blockers[light] : null;
+	}
+	
+	void setBlocker(int light, Intersectable blocker) {
+		if(light >= blockers.length)
+			blockers = Arrays.copyOf(blockers, Math.max(light + 1, 2 * blockers.length));
+		blockers[light] = blocker;
+	}
+}
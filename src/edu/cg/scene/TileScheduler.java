@@ -0,0 +1,83 @@
+package edu.cg.scene;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits a region of an image into rectangular tiles and renders them as fork-join tasks.
+ * The tiles range is split recursively in halves, so idle threads steal the
+ * bigger, not yet split, ranges from the busy ones.
+ */
+class TileScheduler {
+	private static final int MIN_TILE_SIZE = 8;
+	private static final int MAX_TILE_SIZE = 64;
+	private static final int TILES_PER_THREAD = 16;
+
+	interface TileRenderer {
+		/**
+		 * Renders the pixels [x0, x1) X [y0, y1).
+		 */
+		void render(int x0, int y0, int x1, int y1);
+	}
+
+	private final int x0;
+	private final int y0;
+	private final int width;
+	private final int height;
+	private final int tileSize;
+	private final int tilesX;
+	private final int tilesY;
+
+	/**
+	 * The tile size is picked so that every thread gets enough tiles to balance uneven scenes,
+	 * while keeping the tiles big enough to make the scheduling overhead negligible.
+	 */
+	TileScheduler(Region region, int nThreads) {
+		this.x0 = region.x0;
+		this.y0 = region.y0;
+		this.width = region.width();
+		this.height = region.height();
+		int size = (int)Math.sqrt((double)width * height / (nThreads * TILES_PER_THREAD));
+		this.tileSize = Math.max(MIN_TILE_SIZE, Math.min(MAX_TILE_SIZE, size));
+		this.tilesX = (width + tileSize - 1) / tileSize;
+		this.tilesY = (height + tileSize - 1) / tileSize;
+	}
+
+	int tileSize() {
+		return tileSize;
+	}
+
+	int tilesCount() {
+		return tilesX * tilesY;
+	}
+
+	RecursiveAction task(TileRenderer renderer) {
+		return new TilesTask(renderer, 0, tilesCount());
+	}
+
+	@SuppressWarnings("serial")
+	private class TilesTask extends RecursiveAction {
+		private final TileRenderer renderer;
+		private final int from;
+		private final int to;
+
+		TilesTask(TileRenderer renderer, int from, int to) {
+			this.renderer = renderer;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new TilesTask(renderer, from, mid), new TilesTask(renderer, mid, to));
+				return;
+			}
+			for (int tile = from; tile < to; tile++) {
+				int x = (tile % tilesX) * tileSize;
+				int y = (tile / tilesX) * tileSize;
+				renderer.render(x0 + x, y0 + y, x0 + Math.min(x + tileSize, width), y0 + Math.min(y + tileSize, height));
+			}
+		}
+	}
+}
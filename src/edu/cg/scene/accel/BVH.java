@@ -0,0 +1,715 @@
+package edu.cg.scene.accel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.cg.algebra.BoundingBox;
+import edu.cg.algebra.Hit;
+import edu.cg.algebra.Ops;
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Ray;
+import edu.cg.algebra.Scratch;
+import edu.cg.algebra.Vec;
+import edu.cg.scene.objects.Intersectable;
+import edu.cg.scene.stats.Counters;
+
+/**
+ * A bounding volume hierarchy over the surfaces of a scene, built with a binned
+ * surface area heuristic (SAH).
+ * Unbounded primitives (plains) can't be placed in the tree, so they are kept in a
+ * separate list which is tested alongside the tree.
+ * Optionally, the spheres are packed into a SphereBatch, and leaves that hold only spheres
+ * are intersected with its tight loop.
+ * In single precision, the bounds of the nodes are traversed in floats (rounded outwards, so no hit is culled)
+ * and the packed spheres are intersected in floats.
+ */
+public class BVH implements Intersectable {
+	private static final int BINS = 12;
+	private static final int MAX_LEAF_SIZE = 4;
+	private static final int MAX_PACKED_LEAF_SIZE = 8;
+	private static final double TRAVERSAL_COST = 1.0;
+	private static final double INTERSECTION_COST = 1.0;
+	private static final double PACKED_INTERSECTION_COST = 0.5;
+	//The slots of the thread's scratch (ints and doubles) that hold the traversal stacks of the queries.
+	//The double slot 0 is the one of nearestHit; other code uses the double slots from 1.
+	private static final int NEAREST_SLOT = 0;
+	private static final int OCCLUDER_SLOT = 1;
+	private static final int PACKET_SLOT = 2;
+
+	private final Intersectable[] primitives; //bounded primitives, sorted by leaves
+	private final Intersectable[] unbounded;
+	//The indices of the primitives in the given list. Hits with the same t are resolved by these,
+	//like a linear scan over the list does.
+	private final int[] primitiveIds;
+	private final int[] unboundedIds;
+	//The kinds of the primitives, for counting the intersection tests
+	private final int[] primitiveKinds;
+	private final int[] unboundedKinds;
+
+	//The nodes are flattened in depth first order, so the first child of an inner node is the next node.
+	private final double[] nodeBounds; //6 values per node: min x, y, z and then max x, y, z
+	private final float[] floatBounds; //the node bounds in single precision, or null
+	private final int[] nodeData; //inner node: index of the second child, leaf: index of its first primitive
+	private final int[] nodeCount; //inner node: 0, leaf: number of primitives
+	private int nodes = 0;
+	private int depth = 0;
+	
+	//the geometry of the primitives in flat arrays, for the packet tracing
+	private final PrimitiveArrays primitiveArrays;
+	private final PrimitiveArrays unboundedArrays;
+	
+	private final SphereBatch spheres; //null if the spheres are not packed
+	private final boolean[] packedLeaf;
+	private final int maxLeafSize;
+	private final double intersectionCost;
+	private final double builtArea; //the total surface area of the nodes after the build
+
+	//build time data
+	private double[] primBounds;
+	private double[] centroids;
+	private int[] order;
+
+	/**
+	 * Builds the hierarchy over the given primitives.
+	 * @param surfaces - the primitives of the scene (usually its surfaces).
+	 */
+	public BVH(List<? extends Intersectable> surfaces) {
+		this(surfaces, false);
+	}
+
+	/**
+	 * Builds the hierarchy over the given primitives.
+	 * @param surfaces - the primitives of the scene (usually its surfaces).
+	 * @param packSpheres - whether to pack the spheres into a SphereBatch (worth it for many spheres).
+	 */
+	public BVH(List<? extends Intersectable> surfaces, boolean packSpheres) {
+		this(surfaces, packSpheres, false);
+	}
+
+	/**
+	 * Builds the hierarchy over the given primitives.
+	 * @param surfaces - the primitives of the scene (usually its surfaces).
+	 * @param packSpheres - whether to pack the spheres into a SphereBatch (worth it for many spheres).
+	 * @param singlePrecision - whether to traverse the nodes and intersect the packed spheres in floats.
+	 */
+	public BVH(List<? extends Intersectable> surfaces, boolean packSpheres, boolean singlePrecision) {
+		//packed spheres are cheaper to intersect, so the leaves may be bigger
+		maxLeafSize = packSpheres ? MAX_PACKED_LEAF_SIZE : MAX_LEAF_SIZE;
+		intersectionCost = packSpheres ? PACKED_INTERSECTION_COST : INTERSECTION_COST;
+
+		List<Intersectable> bounded = new ArrayList<>();
+		List<Intersectable> unboundedList = new ArrayList<>();
+		List<BoundingBox> boxes = new ArrayList<>();
+		List<Integer> boundedIds = new ArrayList<>();
+		unboundedIds = new int[surfaces.size()];
+		int id = 0;
+		for (Intersectable surface : surfaces) {
+			BoundingBox box = surface.boundingBox();
+			if(box == null) {
+				unboundedIds[unboundedList.size()] = id;
+				unboundedList.add(surface);
+			} else {
+				bounded.add(surface);
+				boxes.add(box);
+				boundedIds.add(id);
+			}
+			++id;
+		}
+
+		int n = bounded.size();
+		primBounds = new double[6 * n];
+		centroids = new double[3 * n];
+		order = new int[n];
+		for (int i = 0; i < n; i++) {
+			BoundingBox box = boxes.get(i);
+			Point min = box.min(), max = box.max();
+			padBounds(box, primBounds, 6*i);
+			centroids[3*i] = (min.x + max.x) / 2;
+			centroids[3*i + 1] = (min.y + max.y) / 2;
+			centroids[3*i + 2] = (min.z + max.z) / 2;
+			order[i] = i;
+		}
+
+		int maxNodes = Math.max(1, 2*n - 1);
+		nodeBounds = new double[6 * maxNodes];
+		nodeData = new int[maxNodes];
+		nodeCount = new int[maxNodes];
+		if(n > 0)
+			build(0, n, 1);
+
+		primitives = new Intersectable[n];
+		primitiveIds = new int[n];
+		primitiveKinds = new int[n];
+		for (int i = 0; i < n; i++) {
+			primitives[i] = bounded.get(order[i]);
+			primitiveIds[i] = boundedIds.get(order[i]);
+			primitiveKinds[i] = Counters.kindOf(primitives[i]);
+		}
+		unbounded = unboundedList.toArray(new Intersectable[0]);
+		unboundedKinds = new int[unbounded.length];
+		for (int i = 0; i < unbounded.length; i++)
+			unboundedKinds[i] = Counters.kindOf(unbounded[i]);
+		primitiveArrays = new PrimitiveArrays(primitives, primitiveKinds);
+		unboundedArrays = new PrimitiveArrays(unbounded, unboundedKinds);
+
+		if(packSpheres) {
+			spheres = new SphereBatch(primitives, primitiveIds, singlePrecision);
+			packedLeaf = new boolean[nodes];
+			for (int node = 0; node < nodes; node++)
+				packedLeaf[node] = nodeCount[node] > 0 &&
+						spheres.isPacked(nodeData[node], nodeData[node] + nodeCount[node]);
+		} else {
+			spheres = null;
+			packedLeaf = null;
+		}
+
+		primBounds = null;
+		centroids = null;
+		order = null;
+		builtArea = nodesArea();
+		floatBounds = singlePrecision ? new float[6 * nodes] : null;
+		updateFloatBounds();
+	}
+
+	/**
+	 * Rounds the bounds of the nodes outwards to floats, so the float bounds contain the double ones.
+	 */
+	private void updateFloatBounds() {
+		if(floatBounds == null)
+			return;
+		for (int i = 0; i < floatBounds.length; i += 6) {
+			for (int j = 0; j < 3; j++) {
+				float min = (float)nodeBounds[i + j], max = (float)nodeBounds[i + 3 + j];
+				floatBounds[i + j] = min > nodeBounds[i + j] ? Math.nextDown(min) : min;
+				floatBounds[i + 3 + j] = max < nodeBounds[i + 3 + j] ? Math.nextUp(max) : max;
+			}
+		}
+	}
+
+	/**
+	 * Copies the bounds of a primitive. The bounds are padded, so flat boxes and hits that are within epsilon
+	 * are not culled.
+	 */
+	private static void padBounds(BoundingBox box, double[] bounds, int offset) {
+		Point min = box.min(), max = box.max();
+		bounds[offset] = min.x - Ops.epsilon;
+		bounds[offset + 1] = min.y - Ops.epsilon;
+		bounds[offset + 2] = min.z - Ops.epsilon;
+		bounds[offset + 3] = max.x + Ops.epsilon;
+		bounds[offset + 4] = max.y + Ops.epsilon;
+		bounds[offset + 5] = max.z + Ops.epsilon;
+	}
+
+	/**
+	 * Fits the hierarchy to primitives that have moved or changed their size, e.g. between the frames of
+	 * an animation. The tree is kept as is: the bounds of the nodes are recomputed bottom up, and the geometry
+	 * of the primitives is copied again to the flat arrays. This is linear in the size of the tree and much
+	 * cheaper than a build, but the tree gets worse as the primitives move away from where it was built.
+	 * The primitives must remain bounded (unbounded primitives may move freely, as they are not in the tree).
+	 * @return the total surface area of the nodes relative to the one of the built tree, which estimates
+	 * how much more the traversal costs. A tree whose area has grown too much should be built again.
+	 */
+	public double refit() {
+		//The children of a node come after it, so going backwards visits them before their parent.
+		double[] bounds = new double[6];
+		for (int node = nodes - 1; node >= 0; node--) {
+			int offset = 6 * node;
+			if(nodeCount[node] == 0) {
+				System.arraycopy(nodeBounds, 6 * (node + 1), nodeBounds, offset, 6);
+				growBounds(nodeBounds, offset, nodeBounds, 6 * nodeData[node], 6 * nodeData[node] + 3);
+				continue;
+			}
+			System.arraycopy(emptyBounds(), 0, nodeBounds, offset, 6);
+			for (int i = nodeData[node]; i < nodeData[node] + nodeCount[node]; i++) {
+				BoundingBox box = primitives[i].boundingBox();
+				if(box == null)
+					throw new IllegalStateException("A primitive of the hierarchy became unbounded: " + primitives[i]);
+				padBounds(box, bounds, 0);
+				growBounds(nodeBounds, offset, bounds, 0, 3);
+			}
+		}
+		updateFloatBounds();
+		primitiveArrays.update();
+		unboundedArrays.update();
+		if(spheres != null)
+			spheres.update();
+		return builtArea > 0 ? nodesArea() / builtArea : 1;
+	}
+
+	private double nodesArea() {
+		double sum = 0;
+		double[] bounds = new double[6];
+		for (int node = 0; node < nodes; node++) {
+			System.arraycopy(nodeBounds, 6 * node, bounds, 0, 6);
+			sum += area(bounds);
+		}
+		return sum;
+	}
+
+	public int size() {
+		return primitives.length + unbounded.length;
+	}
+
+	public int nodesCount() {
+		return nodes;
+	}
+
+	public int packedSpheresCount() {
+		return spheres == null ? 0 : spheres.size();
+	}
+
+	public boolean isSinglePrecision() {
+		return floatBounds != null;
+	}
+
+	private int build(int start, int end, int level) {
+		int node = nodes++;
+		depth = Math.max(depth, level);
+
+		double[] bounds = emptyBounds();
+		double[] centroidBounds = emptyBounds();
+		for (int i = start; i < end; i++) {
+			int prim = order[i];
+			growBounds(bounds, primBounds, 6*prim, 6*prim + 3);
+			growBounds(centroidBounds, centroids, 3*prim, 3*prim);
+		}
+		System.arraycopy(bounds, 0, nodeBounds, 6*node, 6);
+
+		int count = end - start;
+		if(count == 1)
+			return makeLeaf(node, start, count);
+
+		int axis = 0;
+		for (int i = 1; i < 3; i++)
+			if(extent(centroidBounds, i) > extent(centroidBounds, axis))
+				axis = i;
+		double axisMin = centroidBounds[axis];
+		double axisExtent = extent(centroidBounds, axis);
+
+		int mid;
+		if(axisExtent <= 0) {
+			//All the centroids are in the same place, there is nothing to gain from splitting.
+			if(count <= maxLeafSize)
+				return makeLeaf(node, start, count);
+			mid = (start + end) / 2;
+		} else {
+			int[] binCounts = new int[BINS];
+			double[] binBounds = new double[6 * BINS];
+			for (int b = 0; b < BINS; b++)
+				System.arraycopy(emptyBounds(), 0, binBounds, 6*b, 6);
+			for (int i = start; i < end; i++) {
+				int prim = order[i];
+				int b = bin(centroids[3*prim + axis], axisMin, axisExtent);
+				binCounts[b]++;
+				growBounds(binBounds, 6*b, primBounds, 6*prim, 6*prim + 3);
+			}
+
+			//rightArea[b] and rightCount[b] describe the bins b..BINS-1
+			double[] rightArea = new double[BINS];
+			int[] rightCount = new int[BINS];
+			double[] acc = emptyBounds();
+			int accCount = 0;
+			for (int b = BINS - 1; b > 0; b--) {
+				growBounds(acc, binBounds, 6*b, 6*b + 3);
+				accCount += binCounts[b];
+				rightArea[b] = area(acc);
+				rightCount[b] = accCount;
+			}
+
+			//Costs are not divided by the area of the node, so degenerate (flat) nodes are fine.
+			int bestSplit = -1;
+			double bestCost = Double.POSITIVE_INFINITY;
+			acc = emptyBounds();
+			accCount = 0;
+			for (int b = 1; b < BINS; b++) {
+				growBounds(acc, binBounds, 6*(b - 1), 6*(b - 1) + 3);
+				accCount += binCounts[b - 1];
+				if(accCount == 0 || rightCount[b] == 0)
+					continue;
+				double cost = intersectionCost * (accCount * area(acc) + rightCount[b] * rightArea[b]);
+				if(cost < bestCost) {
+					bestCost = cost;
+					bestSplit = b;
+				}
+			}
+
+			double nodeArea = area(bounds);
+			double leafCost = intersectionCost * count * nodeArea;
+			if(count <= maxLeafSize && (bestSplit < 0 || TRAVERSAL_COST * nodeArea + bestCost >= leafCost))
+				return makeLeaf(node, start, count);
+
+			mid = start;
+			if(bestSplit > 0) {
+				for (int i = start; i < end; i++) {
+					int prim = order[i];
+					if(bin(centroids[3*prim + axis], axisMin, axisExtent) < bestSplit) {
+						order[i] = order[mid];
+						order[mid] = prim;
+						++mid;
+					}
+				}
+			}
+			if(mid == start || mid == end)
+				mid = (start + end) / 2;
+		}
+
+		build(start, mid, level + 1);
+		nodeData[node] = build(mid, end, level + 1);
+		nodeCount[node] = 0;
+		return node;
+	}
+
+	private int makeLeaf(int node, int start, int count) {
+		nodeData[node] = start;
+		nodeCount[node] = count;
+		return node;
+	}
+
+	private static int bin(double centroid, double axisMin, double axisExtent) {
+		int b = (int)((centroid - axisMin) * BINS / axisExtent);
+		return Math.min(BINS - 1, Math.max(0, b));
+	}
+
+	private static double[] emptyBounds() {
+		double inf = Double.POSITIVE_INFINITY;
+		return new double[] { inf, inf, inf, -inf, -inf, -inf };
+	}
+
+	private static void growBounds(double[] bounds, double[] src, int minOffset, int maxOffset) {
+		growBounds(bounds, 0, src, minOffset, maxOffset);
+	}
+
+	private static void growBounds(double[] bounds, int offset, double[] src, int minOffset, int maxOffset) {
+		for (int i = 0; i < 3; i++) {
+			bounds[offset + i] = Math.min(bounds[offset + i], src[minOffset + i]);
+			bounds[offset + 3 + i] = Math.max(bounds[offset + 3 + i], src[maxOffset + i]);
+		}
+	}
+
+	private static double extent(double[] bounds, int axis) {
+		return bounds[axis + 3] - bounds[axis];
+	}
+
+	private static double area(double[] bounds) {
+		double dx = extent(bounds, 0), dy = extent(bounds, 1), dz = extent(bounds, 2);
+		return 2 * (dx*dy + dy*dz + dz*dx);
+	}
+
+	@Override
+	public Hit intersect(Ray ray) {
+		return nearestHit(ray, Ops.infinity);
+	}
+
+	/**
+	 * Finds the closest hit of the ray with the surfaces.
+	 * @param ray - the specified ray
+	 * @param maxT - only hits that are closer than maxT are considered.
+	 * @return the closest hit (with its surface) or null if there is no such hit.
+	 */
+	public Hit nearestHit(Ray ray, double maxT) {
+		Counters counters = Counters.get();
+		Hit minHit = null;
+		double minT = maxT;
+		int minId = Integer.MAX_VALUE;
+		for (int i = 0; i < unbounded.length; i++) {
+			++counters.tests[unboundedKinds[i]];
+			Hit hit = unbounded[i].intersect(ray);
+			if(hit != null && hit.t() < minT) {
+				minT = hit.t();
+				minHit = hit;
+				minId = unboundedIds[i];
+			}
+		}
+		if(primitives.length == 0)
+			return minHit;
+
+		Point source = ray.source();
+		Vec direction = ray.direction();
+		double ox = source.x, oy = source.y, oz = source.z;
+		double ix = inverse(direction.x), iy = inverse(direction.y), iz = inverse(direction.z);
+
+		Scratch scratch = Scratch.get();
+		int[] stack = scratch.ints(NEAREST_SLOT, depth + 1);
+		double[] stackT = scratch.doubles(NEAREST_SLOT, depth + 1);
+		int sp = 0;
+		int node = 0;
+		if(slabs(node, ox, oy, oz, ix, iy, iz) > minT)
+			return minHit;
+
+		//counted locally, and added to the counters once per query
+		int visits = 0, packedTests = 0;
+		while(true) {
+			++visits;
+			int count = nodeCount[node];
+			if(count > 0 && packedLeaf != null && packedLeaf[node]) {
+				int first = nodeData[node];
+				packedTests += count;
+				int i = spheres.nearest(ray, first, first + count, minT, minId);
+				//The hit (normal, inside/outside etc.) is built by the sphere itself.
+				//In single precision, its distance may not be closer than the closest hit so far after all.
+				Hit hit = i < 0 ? null : primitives[i].intersect(ray);
+				if(hit != null && (hit.t() < minT || (hit.t() == minT && primitiveIds[i] < minId))) {
+					minT = hit.t();
+					minHit = hit;
+					minId = primitiveIds[i];
+				} else if(i >= 0 && floatBounds != null) {
+					//the float hit is rejected in double, so another sphere of the leaf may still be hit before it
+					for (int j = first; j < first + count; j++) {
+						++counters.tests[primitiveKinds[j]];
+						hit = primitives[j].intersect(ray);
+						if(hit != null && (hit.t() < minT || (hit.t() == minT && primitiveIds[j] < minId))) {
+							minT = hit.t();
+							minHit = hit;
+							minId = primitiveIds[j];
+						}
+					}
+				}
+			} else if(count > 0) {
+				int first = nodeData[node];
+				for (int i = first; i < first + count; i++) {
+					++counters.tests[primitiveKinds[i]];
+					Hit hit = primitives[i].intersect(ray);
+					if(hit != null && (hit.t() < minT || (hit.t() == minT && primitiveIds[i] < minId))) {
+						minT = hit.t();
+						minHit = hit;
+						minId = primitiveIds[i];
+					}
+				}
+			} else {
+				int left = node + 1;
+				int right = nodeData[node];
+				double tLeft = slabs(left, ox, oy, oz, ix, iy, iz);
+				double tRight = slabs(right, ox, oy, oz, ix, iy, iz);
+				boolean hitLeft = tLeft <= minT, hitRight = tRight <= minT;
+				if(hitLeft & hitRight) {
+					//visit the closer child first
+					if(tLeft <= tRight) {
+						stack[sp] = right;
+						stackT[sp++] = tRight;
+						node = left;
+					} else {
+						stack[sp] = left;
+						stackT[sp++] = tLeft;
+						node = right;
+					}
+					continue;
+				} else if(hitLeft) {
+					node = left;
+					continue;
+				} else if(hitRight) {
+					node = right;
+					continue;
+				}
+			}
+
+			do {
+				if(sp == 0) {
+					counters.nodeVisits += visits;
+					counters.tests[Counters.SPHERE] += packedTests;
+					return minHit;
+				}
+				node = stack[--sp];
+			} while(stackT[sp] > minT);
+		}
+	}
+
+	/**
+	 * An any-hit query: stops at the first surface that blocks the ray.
+	 */
+	@Override
+	public boolean occluded(Ray ray, double maxT) {
+		return occluder(ray, maxT) != null;
+	}
+
+	/**
+	 * Same as occluded, but returns the primitive that blocks the ray (e.g. for caching it).
+	 * @return the first primitive that is found to block the ray before maxT, or null if there is none.
+	 */
+	public Intersectable occluder(Ray ray, double maxT) {
+		Counters counters = Counters.get();
+		for (int i = 0; i < unbounded.length; i++) {
+			++counters.tests[unboundedKinds[i]];
+			if(unbounded[i].occluded(ray, maxT))
+				return unbounded[i];
+		}
+		if(primitives.length == 0)
+			return null;
+
+		Point source = ray.source();
+		Vec direction = ray.direction();
+		double ox = source.x, oy = source.y, oz = source.z;
+		double ix = inverse(direction.x), iy = inverse(direction.y), iz = inverse(direction.z);
+
+		int[] stack = Scratch.get().ints(OCCLUDER_SLOT, depth + 1);
+		int sp = 0;
+		stack[sp++] = 0;
+		int visits = 0, packedTests = 0;
+		Intersectable occluder = null;
+		while(sp > 0 && occluder == null) {
+			int node = stack[--sp];
+			++visits;
+			if(slabs(node, ox, oy, oz, ix, iy, iz) >= maxT)
+				continue;
+			int count = nodeCount[node];
+			if(count > 0 && packedLeaf != null && packedLeaf[node]) {
+				int first = nodeData[node];
+				packedTests += count;
+				int sphere = spheres.nearest(ray, first, first + count, maxT);
+				//A float hit may be a self hit near epsilon or a hit just beyond the light, so in single
+				//precision it is checked in double, and if it isn't a hit the leaf is tested in double
+				if(sphere >= 0 && (floatBounds == null || primitives[sphere].occluded(ray, maxT))) {
+					occluder = primitives[sphere];
+				} else if(sphere >= 0) {
+					for (int i = first; i < first + count && occluder == null; i++) {
+						++counters.tests[primitiveKinds[i]];
+						if(primitives[i].occluded(ray, maxT))
+							occluder = primitives[i];
+					}
+				}
+			} else if(count > 0) {
+				int first = nodeData[node];
+				for (int i = first; i < first + count && occluder == null; i++) {
+					++counters.tests[primitiveKinds[i]];
+					if(primitives[i].occluded(ray, maxT))
+						occluder = primitives[i];
+				}
+			} else {
+				stack[sp++] = nodeData[node];
+				stack[sp++] = node + 1;
+			}
+		}
+		counters.nodeVisits += visits;
+		counters.tests[Counters.SPHERE] += packedTests;
+		return occluder;
+	}
+
+	/**
+	 * Finds the closest hits of a packet of rays, traversing the hierarchy once for all of them.
+	 * A node is visited if any ray of the packet may hit something in it, and the primitives of a leaf
+	 * are tested against the rays that hit the bounds of the leaf, over the arrays of the packet.
+	 * The hits are the same as the ones of nearestHit (with ties between primitives resolved by their order).
+	 * @param hits - the closest hits of the rays of the packet are written into this array (null for a miss).
+	 */
+	public void nearestHits(RayPacket packet, double maxT, Hit[] hits) {
+		int n = packet.size;
+		if(n == 0)
+			return;
+		Counters counters = Counters.get();
+		for (int r = 0; r < n; r++) {
+			packet.active[r] = true;
+			packet.minT[r] = maxT;
+			packet.minId[r] = Integer.MAX_VALUE;
+			packet.minPrimitive[r] = -1;
+			packet.minHit[r] = null;
+		}
+		
+		//unbounded primitives are encoded as -(i + 2)
+		for (int i = 0; i < unbounded.length; i++)
+			counters.tests[unboundedKinds[i]] += unboundedArrays.intersect(i, unboundedIds[i], packet, -(i + 2));
+		
+		if(primitives.length > 0) {
+			int[] stack = Scratch.get().ints(PACKET_SLOT, depth + 1);
+			int sp = 0;
+			stack[sp++] = 0;
+			int visits = 0;
+			//the children are visited in the order of the packet's first ray
+			double mx = packet.dx[0], my = packet.dy[0], mz = packet.dz[0];
+			while(sp > 0) {
+				int node = stack[--sp];
+				++visits;
+				if(!activate(node, packet))
+					continue;
+				
+				int count = nodeCount[node];
+				if(count > 0) {
+					int first = nodeData[node];
+					for (int i = first; i < first + count; i++)
+						counters.tests[primitiveKinds[i]] += primitiveArrays.intersect(i, primitiveIds[i], packet, i);
+				} else {
+					int left = node + 1;
+					int right = nodeData[node];
+					if(centerDistance(left, right, mx, my, mz) > 0) {
+						//the right child is closer, so it is popped first
+						stack[sp++] = left;
+						stack[sp++] = right;
+					} else {
+						stack[sp++] = right;
+						stack[sp++] = left;
+					}
+				}
+			}
+			counters.nodeVisits += visits;
+		}
+		
+		for (int r = 0; r < n; r++) {
+			int i = packet.minPrimitive[r];
+			if(i == -1)
+				hits[r] = null;
+			else if(packet.minHit[r] != null)
+				hits[r] = packet.minHit[r];
+			else //the hit (normal, inside/outside etc.) is built by the primitive itself
+				hits[r] = (i >= 0 ? primitives[i] : unbounded[-i - 2]).intersect(packet.rays[r]);
+		}
+	}
+	
+	/**
+	 * Marks the rays of the packet that hit the bounds of the node before their closest hit so far.
+	 * @return true if there is such a ray.
+	 */
+	private boolean activate(int node, RayPacket packet) {
+		boolean any = false;
+		for (int r = 0; r < packet.size; r++) {
+			double t = slabs(node, packet.ox[r], packet.oy[r], packet.oz[r], packet.ix[r], packet.iy[r], packet.iz[r]);
+			boolean active = t <= packet.minT[r];
+			packet.active[r] = active;
+			any |= active;
+		}
+		return any;
+	}
+	
+	/**
+	 * @return the distance between the centers of the nodes, along the given direction
+	 * (positive if the center of the second node comes first).
+	 */
+	private double centerDistance(int node1, int node2, double dx, double dy, double dz) {
+		int o1 = 6 * node1, o2 = 6 * node2;
+		double cx = (nodeBounds[o1] + nodeBounds[o1 + 3]) - (nodeBounds[o2] + nodeBounds[o2 + 3]);
+		double cy = (nodeBounds[o1 + 1] + nodeBounds[o1 + 4]) - (nodeBounds[o2 + 1] + nodeBounds[o2 + 4]);
+		double cz = (nodeBounds[o1 + 2] + nodeBounds[o1 + 5]) - (nodeBounds[o2 + 2] + nodeBounds[o2 + 5]);
+		return cx*dx + cy*dy + cz*dz;
+	}
+
+	static double inverse(double d) {
+		//avoids infinities (and NaNs from 0 * infinity) in the slabs test
+		return 1.0 / (Math.abs(d) < 1e-12 ? Math.copySign(1e-12, d) : d);
+	}
+
+	/**
+	 * The slabs test of a ray against the bounds of a node.
+	 * @return the entering distance of the ray to the node, or infinity if the ray misses it.
+	 */
+	private double slabs(int node, double ox, double oy, double oz, double ix, double iy, double iz) {
+		int offset = 6 * node;
+		if(floatBounds != null)
+			return floatSlabs(offset, ox, oy, oz, ix, iy, iz);
+		double tx1 = (nodeBounds[offset] - ox) * ix, tx2 = (nodeBounds[offset + 3] - ox) * ix;
+		double ty1 = (nodeBounds[offset + 1] - oy) * iy, ty2 = (nodeBounds[offset + 4] - oy) * iy;
+		double tz1 = (nodeBounds[offset + 2] - oz) * iz, tz2 = (nodeBounds[offset + 5] - oz) * iz;
+		double tNear = Math.max(Math.max(Math.min(tx1, tx2), Math.min(ty1, ty2)), Math.min(tz1, tz2));
+		double tFar = Math.min(Math.min(Math.max(tx1, tx2), Math.max(ty1, ty2)), Math.max(tz1, tz2));
+		return tNear <= tFar && tFar >= 0 ? tNear : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * The slabs test over the float bounds. The distances are calculated in doubles, so the test is
+	 * as conservative as the bounds are.
+	 */
+	private double floatSlabs(int offset, double ox, double oy, double oz, double ix, double iy, double iz) {
+		double tx1 = (floatBounds[offset] - ox) * ix, tx2 = (floatBounds[offset + 3] - ox) * ix;
+		double ty1 = (floatBounds[offset + 1] - oy) * iy, ty2 = (floatBounds[offset + 4] - oy) * iy;
+		double tz1 = (floatBounds[offset + 2] - oz) * iz, tz2 = (floatBounds[offset + 5] - oz) * iz;
+		double tNear = Math.max(Math.max(Math.min(tx1, tx2), Math.min(ty1, ty2)), Math.min(tz1, tz2));
+		double tFar = Math.min(Math.min(Math.max(tx1, tx2), Math.max(ty1, ty2)), Math.max(tz1, tz2));
+		return tNear <= tFar && tFar >= 0 ? tNear : Double.POSITIVE_INFINITY;
+	}
+}
@@ -0,0 +1,120 @@
+package edu.cg.scene.accel;
+
+import edu.cg.algebra.Hit;
+import edu.cg.algebra.Ops;
+import edu.cg.algebra.Point;
+import edu.cg.scene.objects.AxisAlignedBox;
+import edu.cg.scene.objects.Intersectable;
+import edu.cg.scene.objects.Plain;
+import edu.cg.scene.objects.Sphere;
+import edu.cg.scene.objects.Surface;
+import edu.cg.scene.stats.Counters;
+
+/**
+ * The geometry of primitives in flat arrays, for testing them against the rays of a packet.
+ * Spheres, boxes and plains are tested with the static hit distance functions of their shapes,
+ * so the distances are the same as the ones of their intersect methods.
+ * Other primitives are tested through intersect.
+ */
+class PrimitiveArrays {
+	private final Intersectable[] primitives;
+	private final int[] kinds;
+	private final double[] params; //6 values per primitive: sphere: center and squared radius, box: min and max, plain: a, b, c, d
+
+	PrimitiveArrays(Intersectable[] primitives, int[] kinds) {
+		this.primitives = primitives;
+		this.kinds = kinds;
+		params = new double[6 * primitives.length];
+		update();
+	}
+	
+	/**
+	 * Copies the geometry of the primitives again, after they have moved.
+	 */
+	void update() {
+		for (int i = 0; i < primitives.length; i++) {
+			Object shape = primitives[i] instanceof Surface ? ((Surface)primitives[i]).shape() : primitives[i];
+			int offset = 6 * i;
+			switch(kinds[i]) {
+			case Counters.SPHERE:
+				Sphere sphere = (Sphere)shape;
+				Point center = sphere.center();
+				params[offset] = center.x;
+				params[offset + 1] = center.y;
+				params[offset + 2] = center.z;
+				params[offset + 3] = sphere.radius() * sphere.radius();
+				break;
+			case Counters.BOX:
+				AxisAlignedBox box = (AxisAlignedBox)shape;
+				Point min = box.minPoint(), max = box.maxPoint();
+				params[offset] = min.x;
+				params[offset + 1] = min.y;
+				params[offset + 2] = min.z;
+				params[offset + 3] = max.x;
+				params[offset + 4] = max.y;
+				params[offset + 5] = max.z;
+				break;
+			case Counters.PLAIN:
+				System.arraycopy(((Plain)shape).coefficients(), 0, params, offset, 4);
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * Tests the primitive against the active rays of the packet, and updates their closest hits.
+	 * A hit replaces the closest hit of a ray if it is closer, or as close with a lower id.
+	 * @param id - the id of the primitive for resolving ties (its index in the list of the BVH).
+	 * @param primitiveIndex - the index of the primitive that is recorded for the rays that it hits.
+	 * @return the number of rays that were tested.
+	 */
+	int intersect(int i, int id, RayPacket packet, int primitiveIndex) {
+		int offset = 6 * i;
+		double p0 = params[offset], p1 = params[offset + 1], p2 = params[offset + 2];
+		double p3 = params[offset + 3], p4 = params[offset + 4], p5 = params[offset + 5];
+		boolean[] active = packet.active;
+		double[] minT = packet.minT;
+		int[] minId = packet.minId;
+		int tested = 0;
+		int kind = kinds[i];
+		for (int r = 0; r < packet.size; r++) {
+			if(!active[r])
+				continue;
+			++tested;
+			double t;
+			Hit hit = null;
+			switch(kind) {
+			case Counters.SPHERE:
+				t = Sphere.hitDistance(packet.ox[r], packet.oy[r], packet.oz[r], packet.dx[r], packet.dy[r], packet.dz[r],
+						p0, p1, p2, p3);
+				break;
+			case Counters.BOX:
+				t = Math.abs(AxisAlignedBox.signedHitDistance(packet.ox[r], packet.oy[r], packet.oz[r],
+						packet.dx[r], packet.dy[r], packet.dz[r], p0, p1, p2, p3, p4, p5));
+				break;
+			case Counters.PLAIN:
+				t = Plain.hitDistance(p0, p1, p2, p3, packet.ox[r], packet.oy[r], packet.oz[r],
+						packet.dx[r], packet.dy[r], packet.dz[r]);
+				if(!(t > Ops.epsilon & t < Ops.infinity))
+					t = Double.POSITIVE_INFINITY;
+				break;
+			default:
+				hit = primitives[i].intersect(packet.rays[r]);
+				t = hit == null ? Double.POSITIVE_INFINITY : hit.t();
+			}
+			if(!(t < Double.POSITIVE_INFINITY))
+				continue; //no hit (NaN for a missed box)
+			if(t < minT[r] || (t == minT[r] && id < minId[r])) {
+				minT[r] = t;
+				minId[r] = id;
+				packet.minPrimitive[r] = primitiveIndex;
+				packet.minHit[r] = hit;
+			}
+		}
+		return tested;
+	}
+	
+	Intersectable primitive(int i) {
+		return primitives[i];
+	}
+}
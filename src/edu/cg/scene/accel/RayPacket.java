@@ -0,0 +1,72 @@
+package edu.cg.scene.accel;
+
+import edu.cg.algebra.Hit;
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Ray;
+import edu.cg.algebra.Vec;
+
+/**
+ * A packet of rays that are traced together through a BVH (e.g. the primary rays of neighboring pixels).
+ * The sources, directions and inverse directions of the rays are kept as a structure of arrays,
+ * next to the per ray state of the traversal.
+ * A packet is reused: it is cleared and filled again for every group of rays.
+ */
+public class RayPacket {
+	public static final int MAX_SIZE = 64;
+	
+	final Ray[] rays = new Ray[MAX_SIZE];
+	final double[] ox = new double[MAX_SIZE], oy = new double[MAX_SIZE], oz = new double[MAX_SIZE];
+	final double[] dx = new double[MAX_SIZE], dy = new double[MAX_SIZE], dz = new double[MAX_SIZE];
+	final double[] ix = new double[MAX_SIZE], iy = new double[MAX_SIZE], iz = new double[MAX_SIZE];
+	int size = 0;
+	
+	//traversal state
+	final boolean[] active = new boolean[MAX_SIZE];
+	final double[] minT = new double[MAX_SIZE];
+	final int[] minId = new int[MAX_SIZE];
+	final int[] minPrimitive = new int[MAX_SIZE];
+	final Hit[] minHit = new Hit[MAX_SIZE];
+	
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			rays[i] = null;
+			minHit[i] = null;
+		}
+		size = 0;
+	}
+	
+	/**
+	 * Adds a ray to the packet.
+	 * @return the index of the ray in the packet.
+	 */
+	public int add(Ray ray) {
+		if(size == MAX_SIZE)
+			throw new IllegalStateException("The packet is full");
+		
+		Point source = ray.source();
+		Vec direction = ray.direction();
+		rays[size] = ray;
+		ox[size] = source.x;
+		oy[size] = source.y;
+		oz[size] = source.z;
+		dx[size] = direction.x;
+		dy[size] = direction.y;
+		dz[size] = direction.z;
+		ix[size] = BVH.inverse(direction.x);
+		iy[size] = BVH.inverse(direction.y);
+		iz[size] = BVH.inverse(direction.z);
+		return size++;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public boolean isFull() {
+		return size == MAX_SIZE;
+	}
+	
+	public Ray ray(int i) {
+		return rays[i];
+	}
+}
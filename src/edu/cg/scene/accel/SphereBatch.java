@@ -0,0 +1,190 @@
+package edu.cg.scene.accel;
+
+import edu.cg.algebra.Ops;
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Ray;
+import edu.cg.algebra.Vec;
+import edu.cg.scene.objects.Intersectable;
+import edu.cg.scene.objects.Sphere;
+import edu.cg.scene.objects.Surface;
+
+/**
+ * A packed collection of spheres, stored as a structure of arrays (flat arrays of centers and radii).
+ * The arrays are aligned with the primitives of a BVH, so the spheres of a leaf are contiguous,
+ * and a ray is intersected with all of them in one tight loop over primitive arrays,
+ * instead of a virtual call and a few pointer dereferences per sphere.
+ * In single precision, the spheres are stored and intersected in floats, which halves the memory of the arrays.
+ * The hit distances are then only close to the ones of Sphere.intersect, so hits closer than a scale aware epsilon
+ * (see Ops.epsilon(double, double)) are ignored.
+ */
+public class SphereBatch {
+	private final double[] cx, cy, cz; //centers, null in single precision
+	private final double[] rr; //squared radii, null in single precision
+	private final float[] fcx, fcy, fcz; //centers, null in double precision
+	private final float[] frr; //squared radii, null in double precision
+	private double scale = 0; //the biggest magnitude of the coordinates of the spheres
+	private final boolean[] packed; //whether the primitive in this index is a packed sphere
+	private final Intersectable[] primitives;
+	private final int[] ids; //the order of the primitives in the scene, for resolving hits with the same t
+	private int size = 0;
+
+	/**
+	 * Packs the spheres among the given primitives. Other primitives are left out of the batch.
+	 * @param primitives - the primitives, in the order of the leaves of the BVH.
+	 * @param ids - the indices of the primitives in the scene. Of two hits with the same t, the one with
+	 * the smaller id is the closest, like in a linear scan over the scene.
+	 */
+	public SphereBatch(Intersectable[] primitives, int[] ids) {
+		this(primitives, ids, false);
+	}
+	
+	/**
+	 * Packs the spheres among the given primitives. Other primitives are left out of the batch.
+	 * @param primitives - the primitives, in the order of the leaves of the BVH.
+	 * @param ids - the indices of the primitives in the scene, for resolving hits with the same t.
+	 * @param singlePrecision - whether to store and intersect the spheres in floats.
+	 */
+	public SphereBatch(Intersectable[] primitives, int[] ids, boolean singlePrecision) {
+		int n = primitives.length;
+		cx = singlePrecision ? null : new double[n];
+		cy = singlePrecision ? null : new double[n];
+		cz = singlePrecision ? null : new double[n];
+		rr = singlePrecision ? null : new double[n];
+		fcx = singlePrecision ? new float[n] : null;
+		fcy = singlePrecision ? new float[n] : null;
+		fcz = singlePrecision ? new float[n] : null;
+		frr = singlePrecision ? new float[n] : null;
+		packed = new boolean[n];
+		this.primitives = primitives;
+		this.ids = ids;
+		for (int i = 0; i < n; i++) {
+			if(!(primitives[i] instanceof Surface) || !(((Surface)primitives[i]).shape() instanceof Sphere))
+				continue;
+			packed[i] = true;
+			++size;
+		}
+		update();
+	}
+	
+	/**
+	 * Copies the centers and radii of the spheres again, after they have moved.
+	 */
+	public void update() {
+		scale = 0;
+		for (int i = 0; i < primitives.length; i++) {
+			if(!packed[i])
+				continue;
+			Sphere sphere = (Sphere)((Surface)primitives[i]).shape();
+			Point center = sphere.center();
+			double radius = sphere.radius();
+			scale = Math.max(scale, maxAbs(center.x, center.y, center.z) + Math.abs(radius));
+			if(fcx != null) {
+				fcx[i] = (float)center.x;
+				fcy[i] = (float)center.y;
+				fcz[i] = (float)center.z;
+				frr[i] = (float)(radius * radius);
+				continue;
+			}
+			cx[i] = center.x;
+			cy[i] = center.y;
+			cz[i] = center.z;
+			rr[i] = radius * radius;
+		}
+	}
+	
+	private static double maxAbs(double x, double y, double z) {
+		return Math.max(Math.abs(x), Math.max(Math.abs(y), Math.abs(z)));
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return true if all the primitives in the range [from, to) are packed spheres.
+	 */
+	public boolean isPacked(int from, int to) {
+		for (int i = from; i < to; i++)
+			if(!packed[i])
+				return false;
+		return true;
+	}
+
+	/**
+	 * Finds the closest sphere in the range [from, to) that the ray hits before maxT.
+	 * @return the index of the closest sphere, or -1 if there is no such sphere.
+	 */
+	public int nearest(Ray ray, int from, int to, double maxT) {
+		return nearest(ray, from, to, maxT, 0);
+	}
+
+	/**
+	 * Finds the closest sphere in the range [from, to) that the ray hits.
+	 * The hit distances are the same as the ones of Sphere.intersect, and hits with the same t are resolved by the ids.
+	 * @param maxId - the id of the hit at maxT, so a sphere that is hit at maxT is closer if its id is smaller.
+	 * @return the index of the closest sphere that is hit before maxT (or at maxT with an id smaller than maxId),
+	 * or -1 if there is no such sphere.
+	 */
+	public int nearest(Ray ray, int from, int to, double maxT, int maxId) {
+		if(fcx != null)
+			return nearestFloat(ray, from, to, maxT, maxId);
+		Point p = ray.source();
+		Vec v = ray.direction();
+		double ox = p.x, oy = p.y, oz = p.z;
+		double vx = v.x, vy = v.y, vz = v.z;
+		double minT = Math.min(maxT, Math.nextUp(Ops.infinity));
+		int minId = minT == maxT ? maxId : 0;
+		int minIndex = -1;
+		for (int i = from; i < to; i++) {
+			double dx = ox - cx[i], dy = oy - cy[i], dz = oz - cz[i];
+			double b = 2 * (vx*dx + vy*dy + vz*dz);
+			double c = dx*dx + dy*dy + dz*dz - rr[i];
+			double delta = b*b - 4*c;
+			if(delta < 0)
+				continue;
+			double sqrtDelta = Math.sqrt(delta);
+			double t1 = (-b + sqrtDelta) / 2;
+			double t2 = (-b - sqrtDelta) / 2;
+			double t = t2 < Ops.epsilon ? t1 : t2;
+			if(t >= Ops.epsilon && (t < minT || (t == minT && ids[i] < minId))) {
+				minT = t;
+				minId = ids[i];
+				minIndex = i;
+			}
+		}
+		return minIndex;
+	}
+
+	/**
+	 * The single precision version of nearest. The rounding errors grow with the magnitude of the coordinates
+	 * (of the spheres and of the source of the ray), and so does the epsilon below which hits are ignored.
+	 */
+	private int nearestFloat(Ray ray, int from, int to, double maxT, int maxId) {
+		Point p = ray.source();
+		Vec v = ray.direction();
+		float ox = (float)p.x, oy = (float)p.y, oz = (float)p.z;
+		float vx = (float)v.x, vy = (float)v.y, vz = (float)v.z;
+		float epsilon = (float)Ops.epsilon(Math.max(scale, maxAbs(p.x, p.y, p.z)), Ops.floatError);
+		float minT = (float)Math.min(maxT, Ops.infinity);
+		int minId = minT == maxT ? maxId : 0;
+		int minIndex = -1;
+		for (int i = from; i < to; i++) {
+			float dx = ox - fcx[i], dy = oy - fcy[i], dz = oz - fcz[i];
+			float b = 2 * (vx*dx + vy*dy + vz*dz);
+			float c = dx*dx + dy*dy + dz*dz - frr[i];
+			float delta = b*b - 4*c;
+			if(delta < 0)
+				continue;
+			float sqrtDelta = (float)Math.sqrt(delta);
+			float t1 = (-b + sqrtDelta) / 2;
+			float t2 = (-b - sqrtDelta) / 2;
+			float t = t2 < epsilon ? t1 : t2;
+			if(t >= epsilon && (t < minT || (t == minT && ids[i] < minId))) {
+				minT = t;
+				minId = ids[i];
+				minIndex = i;
+			}
+		}
+		return minIndex;
+	}
+}
@@ -0,0 +1,273 @@
+package edu.cg.scene.animation;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+
+import javax.imageio.ImageIO;
+
+import edu.cg.Logger;
+import edu.cg.algebra.BoundingBox;
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Vec;
+import edu.cg.scene.Scene;
+import edu.cg.scene.Scene.FrameRenderer;
+import edu.cg.scene.camera.PinholeCamera;
+import edu.cg.scene.objects.AxisAlignedBox;
+import edu.cg.scene.objects.Plain;
+import edu.cg.scene.objects.Shape;
+import edu.cg.scene.objects.Sphere;
+import edu.cg.scene.objects.Surface;
+
+/**
+ * An animation of a scene over a range of frames.
+ * The camera and the transforms of surfaces (a translation and a uniform scale) are given in keyframes,
+ * and interpolated linearly between them. Before the first keyframe and after the last one they are held.
+ * A turntable rotation of the camera around an axis may be added on top of the keyframes.
+ * The frames are rendered one after the other with a single FrameRenderer of the scene, into numbered PNG files.
+ */
+public class Animation {
+	private final Scene scene;
+	private int firstFrame = 0;
+	private int lastFrame = 0;
+
+	//The camera states (see PinholeCamera.asArray) by frame. The state of the scene's camera is used if there are none.
+	private final TreeMap<Integer, double[]> cameraKeys = new TreeMap<>();
+	private final double[] restCamera;
+	//The transforms of the animated surfaces by frame: translation x, y, z and scale.
+	private final Map<Surface, TreeMap<Integer, double[]>> transformKeys = new IdentityHashMap<>();
+	//The geometry of the animated surfaces before the animation, which the transforms are applied to.
+	private final Map<Surface, double[]> restGeometry = new IdentityHashMap<>();
+
+	private Point turntableCenter = null;
+	private Vec turntableAxis = null;
+	private double turntableDegrees = 0;
+
+	public Animation(Scene scene) {
+		this.scene = scene;
+		this.restCamera = scene.getCamera().asArray();
+	}
+
+	//MARK: initializers
+	/**
+	 * Sets the range of the rendered frames: [firstFrame, lastFrame].
+	 */
+	public Animation initFrames(int firstFrame, int lastFrame) {
+		if(firstFrame > lastFrame)
+			throw new IllegalArgumentException("Illegal frames range [" + firstFrame + ", " + lastFrame + "]");
+		this.firstFrame = firstFrame;
+		this.lastFrame = lastFrame;
+		return this;
+	}
+
+	public Animation addCameraKeyframe(int frame, PinholeCamera camera) {
+		cameraKeys.put(frame, camera.asArray());
+		return this;
+	}
+
+	/**
+	 * Adds a keyframe of a surface of the scene. The surface is scaled around its center and then translated,
+	 * relative to its geometry before the animation. Plains are infinite, so they are only translated.
+	 */
+	public Animation addKeyframe(int frame, Surface surface, Vec translation, double scale) {
+		if(!restGeometry.containsKey(surface))
+			restGeometry.put(surface, geometry(surface.shape()));
+		transformKeys.computeIfAbsent(surface, s -> new TreeMap<>())
+			.put(frame, new double[] { translation.x, translation.y, translation.z, scale });
+		return this;
+	}
+
+	/**
+	 * Rotates the camera around an axis over the frames range, on top of its keyframes.
+	 * The last frame stops one step before the full rotation, so a turntable of 360 degrees loops seamlessly.
+	 */
+	public Animation initTurntable(Point center, Vec axis, double degrees) {
+		this.turntableCenter = center;
+		this.turntableAxis = axis.normalize();
+		this.turntableDegrees = degrees;
+		return this;
+	}
+
+	/**
+	 * Rotates the camera around the vertical axis (the up vector of the camera) through the center
+	 * of the bounded surfaces of the scene.
+	 */
+	public Animation initTurntable(double degrees) {
+		BoundingBox bounds = null;
+		for (Surface surface : scene.getSurfaces()) {
+			BoundingBox box = surface.boundingBox();
+			if(box != null)
+				bounds = bounds == null ? box : bounds.union(box);
+		}
+		//without bounded surfaces, the camera turns around the point it looks at
+		Point center = bounds != null ? bounds.center() : new Point(restCamera[3], restCamera[4], restCamera[5]);
+		return initTurntable(center, new Vec(restCamera[9], restCamera[10], restCamera[11]), degrees);
+	}
+
+	public int firstFrame() {
+		return firstFrame;
+	}
+
+	public int lastFrame() {
+		return lastFrame;
+	}
+
+	//MARK: frames
+	/**
+	 * Sets the camera and the geometry of the animated surfaces of the scene to the ones of the given frame.
+	 */
+	public void apply(int frame) {
+		double[] state = cameraKeys.isEmpty() ? restCamera : interpolate(cameraKeys, frame);
+		if(!cameraKeys.isEmpty() && !cameraKeys.containsValue(state)) {
+			//the interpolated vectors are not orthonormal, so the camera is made of them again
+			state = new PinholeCamera(new Point(state[0], state[1], state[2]), new Vec(state[6], state[7], state[8]),
+					new Vec(state[9], state[10], state[11]), state[15]).asArray();
+		}
+		double angle = Math.toRadians(turntableDegrees * (frame - firstFrame) / (lastFrame - firstFrame + 1));
+		if(turntableAxis != null && angle != 0)
+			state = rotate(state, turntableCenter, turntableAxis, angle);
+		scene.initCamera(PinholeCamera.fromArray(state));
+
+		for (Map.Entry<Surface, TreeMap<Integer, double[]>> entry : transformKeys.entrySet()) {
+			Surface surface = entry.getKey();
+			transform(surface.shape(), restGeometry.get(surface), interpolate(entry.getValue(), frame));
+		}
+	}
+
+	/**
+	 * Restores the camera and the surfaces of the scene to their state before the animation.
+	 */
+	public void reset() {
+		scene.initCamera(PinholeCamera.fromArray(restCamera));
+		for (Map.Entry<Surface, double[]> entry : restGeometry.entrySet())
+			transform(entry.getKey().shape(), entry.getValue(), new double[] { 0, 0, 0, 1 });
+	}
+
+	/**
+	 * Renders the frames range into the files prefix_NNNN.png (numbered by frame) in the given folder.
+	 * The threads and the bounding volume hierarchy of the scene are reused by all the frames.
+	 * The scene is restored to its state before the animation afterwards.
+	 */
+	public void render(File folder, String prefix, int imgWidth, int imgHeight, double viewPlainWidth,
+			int nThreads, Logger logger) throws InterruptedException, ExecutionException, IOException {
+		try {
+			apply(firstFrame);
+			try (FrameRenderer renderer = scene.frameRenderer(imgWidth, imgHeight, viewPlainWidth, nThreads, logger)) {
+				for (int frame = firstFrame; frame <= lastFrame; frame++) {
+					long start = System.nanoTime();
+					apply(frame);
+					BufferedImage img = renderer.render();
+					File file = new File(folder, frameName(prefix, frame));
+					ImageIO.write(img, "png", file);
+					logger.log("Frame " + frame + " of " + scene.getName() + " has been rendered in " +
+							(System.nanoTime() - start) / 1000000 + "ms and saved to " + file.getPath());
+				}
+			}
+		} finally {
+			reset();
+		}
+	}
+
+	public static String frameName(String prefix, int frame) {
+		return String.format("%s_%04d.png", prefix, frame);
+	}
+
+	/**
+	 * @return the values of the keyframes at the given frame: the values of the keyframe itself (or of the
+	 * nearest keyframe, out of the keyframes range), or a linear interpolation of the keyframes around it.
+	 */
+	private static double[] interpolate(TreeMap<Integer, double[]> keys, int frame) {
+		Map.Entry<Integer, double[]> before = keys.floorEntry(frame);
+		Map.Entry<Integer, double[]> after = keys.higherEntry(frame);
+		if(before == null)
+			return after.getValue();
+		if(after == null || before.getKey() == frame)
+			return before.getValue();
+		double w = (double)(frame - before.getKey()) / (after.getKey() - before.getKey());
+		double[] a = before.getValue(), b = after.getValue();
+		double[] values = new double[a.length];
+		for (int i = 0; i < values.length; i++)
+			values[i] = a[i] + w * (b[i] - a[i]);
+		return values;
+	}
+
+	/**
+	 * @return the state of a camera that is rotated by the angle around the axis through the center.
+	 */
+	private static double[] rotate(double[] state, Point center, Vec axis, double angle) {
+		double[] rotated = state.clone();
+		double cos = Math.cos(angle), sin = Math.sin(angle);
+		rotate(rotated, 0, center, axis, cos, sin); //camera position
+		rotate(rotated, 3, center, axis, cos, sin); //center point
+		rotate(rotated, 6, null, axis, cos, sin); //towards
+		rotate(rotated, 9, null, axis, cos, sin); //up
+		rotate(rotated, 12, null, axis, cos, sin); //right
+		return rotated;
+	}
+
+	/**
+	 * Rotates the point or vector (if center is null) in values[offset..offset+2] with Rodrigues' formula.
+	 */
+	private static void rotate(double[] values, int offset, Point center, Vec k, double cos, double sin) {
+		double x = values[offset], y = values[offset + 1], z = values[offset + 2];
+		if(center != null) {
+			x -= center.x;
+			y -= center.y;
+			z -= center.z;
+		}
+		double dot = (k.x*x + k.y*y + k.z*z) * (1 - cos);
+		double rx = x*cos + (k.y*z - k.z*y)*sin + k.x*dot;
+		double ry = y*cos + (k.z*x - k.x*z)*sin + k.y*dot;
+		double rz = z*cos + (k.x*y - k.y*x)*sin + k.z*dot;
+		if(center != null) {
+			rx += center.x;
+			ry += center.y;
+			rz += center.z;
+		}
+		values[offset] = rx;
+		values[offset + 1] = ry;
+		values[offset + 2] = rz;
+	}
+
+	/**
+	 * @return the geometry of a shape: sphere: center and radius, box: min and max, plain: a, b, c, d.
+	 */
+	private static double[] geometry(Shape shape) {
+		if(shape instanceof Sphere) {
+			Sphere sphere = (Sphere)shape;
+			Point center = sphere.center();
+			return new double[] { center.x, center.y, center.z, sphere.radius() };
+		}
+		if(shape instanceof AxisAlignedBox) {
+			AxisAlignedBox box = (AxisAlignedBox)shape;
+			Point min = box.minPoint(), max = box.maxPoint();
+			return new double[] { min.x, min.y, min.z, max.x, max.y, max.z };
+		}
+		if(shape instanceof Plain)
+			return ((Plain)shape).coefficients();
+		throw new IllegalArgumentException("Only spheres, boxes and plains can be animated, not " + shape);
+	}
+
+	/**
+	 * Sets the geometry of the shape to its rest geometry, scaled around its center and translated.
+	 * The identity transform restores the rest geometry exactly.
+	 */
+	private static void transform(Shape shape, double[] rest, double[] t) {
+		double tx = t[0], ty = t[1], tz = t[2], scale = t[3];
+		if(shape instanceof Sphere) {
+			((Sphere)shape).initCenter(new Point(rest[0] + tx, rest[1] + ty, rest[2] + tz)).initRadius(rest[3] * scale);
+		} else if(shape instanceof AxisAlignedBox) {
+			//c + scale * (min - c), written so that a scale of 1 keeps the corners as they are
+			double near = (1 + scale) / 2, far = (1 - scale) / 2;
+			((AxisAlignedBox)shape).initBounds(
+					new Point(rest[0]*near + rest[3]*far + tx, rest[1]*near + rest[4]*far + ty, rest[2]*near + rest[5]*far + tz),
+					new Point(rest[3]*near + rest[0]*far + tx, rest[4]*near + rest[1]*far + ty, rest[5]*near + rest[2]*far + tz));
+		} else {
+			((Plain)shape).initCoefficients(rest[0], rest[1], rest[2], rest[3] - (rest[0]*tx + rest[1]*ty + rest[2]*tz));
+		}
+	}
+}
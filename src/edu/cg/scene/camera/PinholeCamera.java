@@ -5,6 +5,7 @@ import edu.cg.algebra.Point;
 import edu.cg.algebra.Ray;
 import edu.cg.algebra.Vec;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -19,6 +20,11 @@ public class PinholeCamera {
 	double ratio;
 	double width;
 	double height;
+	//The ray generator tables, built by initResolution: the offsets of the columns (along rightVec)
+	//and rows (along upVec) from the center point, and the super sampling offsets of every anti aliasing factor.
+	private transient double[] columnX, columnY, columnZ;
+	private transient double[] rowX, rowY, rowZ;
+	private transient double[][] samplesX, samplesY, samplesZ;
 	/**
 	 * Initializes a pinhole camera model with default resolution 200X200 (RxXRy) and image width 2.
 	 * @param cameraPosition - The position of the camera.
@@ -38,6 +44,34 @@ public class PinholeCamera {
 		this.height = 200.0;
 		this.viewPlainWidth = 2.0;
 	}
+	/**
+	 * @return the state of the camera, as {cameraPosition, centerPoint, towardsVec, upVec, rightVec (x, y, z each),
+	 * distanceToPlain, viewPlainWidth}.
+	 */
+	public double[] asArray() {
+		return new double[] {
+				cameraPosition.x, cameraPosition.y, cameraPosition.z,
+				centerPoint.x, centerPoint.y, centerPoint.z,
+				towardsVec.x, towardsVec.y, towardsVec.z,
+				upVec.x, upVec.y, upVec.z,
+				rightVec.x, rightVec.y, rightVec.z,
+				distanceToPlain, viewPlainWidth };
+	}
+
+	/**
+	 * Restores a camera from the state that asArray returns, as is (the vectors are not normalized again).
+	 */
+	public static PinholeCamera fromArray(double[] state) {
+		PinholeCamera camera = new PinholeCamera(new Point(state[0], state[1], state[2]),
+				new Vec(state[6], state[7], state[8]), new Vec(state[9], state[10], state[11]), state[15]);
+		camera.centerPoint = new Point(state[3], state[4], state[5]);
+		camera.towardsVec = new Vec(state[6], state[7], state[8]);
+		camera.upVec = new Vec(state[9], state[10], state[11]);
+		camera.rightVec = new Vec(state[12], state[13], state[14]);
+		camera.viewPlainWidth = state[16];
+		return camera;
+	}
+
 	/**
 	 * Initializes the resolution and width of the image.
 	 * @param height - the number of pixels in the y direction.
@@ -50,6 +84,125 @@ public class PinholeCamera {
 		this.height = height;
 		this.viewPlainWidth = viewPlainWidth;
 		this.ratio =  viewPlainWidth/width;
+		initRayGenerator();
+	}
+
+	/**
+	 * Precomputes the per pixel terms of transform and transformAntiAliasing,
+	 * with the same arithmetic, so generated rays are identical to the transformed ones.
+	 */
+	private void initRayGenerator() {
+		int w = (int)width, h = (int)height;
+		columnX = new double[w];
+		columnY = new double[w];
+		columnZ = new double[w];
+		for (int x = 0; x < w; x++) {
+			double scalar = (x - Math.floor(width/2.0)) * ratio;
+			columnX[x] = scalar * rightVec.x;
+			columnY[x] = scalar * rightVec.y;
+			columnZ[x] = scalar * rightVec.z;
+		}
+		rowX = new double[h];
+		rowY = new double[h];
+		rowZ = new double[h];
+		for (int y = 0; y < h; y++) {
+			double scalar = -1 * (y - Math.floor(height/2.0)) * ratio;
+			rowX[y] = scalar * upVec.x;
+			rowY[y] = scalar * upVec.y;
+			rowZ[y] = scalar * upVec.z;
+		}
+
+		samplesX = new double[4][];
+		samplesY = new double[4][];
+		samplesZ = new double[4][];
+		for (int factor = 1; factor <= 3; factor++) {
+			List<Vec> offsets = new ArrayList<>();
+			if(factor == 1)
+				offsets.add(null);
+			else {
+				double transformFactor = factor == 2 ? ratio / 4.0 : ratio / 3.0;
+				Vec moveUp = upVec.mult(transformFactor);
+				Vec moveDown = upVec.mult(-1 * transformFactor);
+				Vec moveRight = rightVec.mult(transformFactor);
+				Vec moveLeft = rightVec.mult(-1 * transformFactor);
+				offsets.add(moveUp.add(moveRight));
+				offsets.add(moveUp.add(moveLeft));
+				offsets.add(moveDown.add(moveRight));
+				offsets.add(moveDown.add(moveLeft));
+				if(factor == 3) {
+					offsets.add(null);
+					offsets.add(moveUp);
+					offsets.add(moveDown);
+					offsets.add(moveRight);
+					offsets.add(moveLeft);
+				}
+			}
+			//a null offset is the center of the pixel itself, which is marked with NaN in the tables
+			samplesX[factor] = new double[offsets.size()];
+			samplesY[factor] = new double[offsets.size()];
+			samplesZ[factor] = new double[offsets.size()];
+			for (int i = 0; i < offsets.size(); i++) {
+				Vec offset = offsets.get(i);
+				samplesX[factor][i] = offset == null ? Double.NaN : offset.x;
+				samplesY[factor][i] = offset == null ? Double.NaN : offset.y;
+				samplesZ[factor][i] = offset == null ? Double.NaN : offset.z;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of rays that generateRays shoots through every pixel with the given anti aliasing factor.
+	 */
+	public int samplesPerPixel(int antiAliasingFactor) {
+		return samplesX[Math.min(Math.max(antiAliasingFactor, 1), 3)].length;
+	}
+
+	/**
+	 * Generates the primary rays of the pixels (xs[i], ys[i]) for i in [from, to), e.g., of a row or a tile.
+	 * With an anti aliasing factor of 1 a single ray is shot through the center of every pixel,
+	 * otherwise the super sampling rays of transformAntiAliasing are shot, one pixel after the other.
+	 * The origins and the normalized directions of the rays are written to the given arrays from index 0,
+	 * and they are identical to the ones of new Ray(getCameraPosition(), point) of the transformed points.
+	 * The resolution must be initialized first.
+	 * @return the number of rays.
+	 */
+	public int generateRays(int[] xs, int[] ys, int from, int to, int antiAliasingFactor,
+			double[] ox, double[] oy, double[] oz, double[] dx, double[] dy, double[] dz) {
+		int factor = Math.min(Math.max(antiAliasingFactor, 1), 3);
+		double[] sx = samplesX[factor], sy = samplesY[factor], sz = samplesZ[factor];
+		double px = cameraPosition.x, py = cameraPosition.y, pz = cameraPosition.z;
+		int count = 0;
+		for (int i = from; i < to; i++) {
+			int x = xs[i], y = ys[i];
+			double cx = centerPoint.x + (columnX[x] + rowX[y]);
+			double cy = centerPoint.y + (columnY[x] + rowY[y]);
+			double cz = centerPoint.z + (columnZ[x] + rowZ[y]);
+			for (int j = 0; j < sx.length; j++, count++) {
+				double vx = cx, vy = cy, vz = cz;
+				if(!Double.isNaN(sx[j])) {
+					vx += sx[j];
+					vy += sy[j];
+					vz += sz[j];
+				}
+				vx -= px;
+				vy -= py;
+				vz -= pz;
+				//new Ray(p0, p1) normalizes the direction twice
+				for (int k = 0; k < 2; k++) {
+					double norm = 1.0/Math.sqrt(vx*vx + vy*vy + vz*vz);
+					vx = norm*vx;
+					vy = norm*vy;
+					vz = norm*vz;
+				}
+				ox[count] = px;
+				oy[count] = py;
+				oz[count] = pz;
+				dx[count] = vx;
+				dy[count] = vy;
+				dz[count] = vz;
+			}
+		}
+		return count;
 	}
 
 	/**
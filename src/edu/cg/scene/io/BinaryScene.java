@@ -0,0 +1,459 @@
+package edu.cg.scene.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Vec;
+import edu.cg.scene.Scene;
+import edu.cg.scene.camera.PinholeCamera;
+import edu.cg.scene.lightSources.DirectionalLight;
+import edu.cg.scene.lightSources.Light;
+import edu.cg.scene.lightSources.PointLight;
+import edu.cg.scene.lightSources.Spotlight;
+import edu.cg.scene.objects.AxisAlignedBox;
+import edu.cg.scene.objects.Material;
+import edu.cg.scene.objects.MaterialTable;
+import edu.cg.scene.objects.Plain;
+import edu.cg.scene.objects.Shape;
+import edu.cg.scene.objects.Sphere;
+import edu.cg.scene.objects.Surface;
+
+/**
+ * A compact binary scene format, which is loaded through a memory mapped file.
+ * The file starts with a header of the scene settings, the camera, the ambient and the background color,
+ * followed by a table of the distinct materials and by sections of lights and primitives, one per type.
+ * A section is laid out column-wise: the number of its elements and then an array of every field
+ * (e.g. all the x coordinates of the sphere centers, then all the y coordinates),
+ * so a column is read with a single bulk copy, and the surfaces refer to the materials by index.
+ * All the values are little endian, and every column starts at a multiple of 8 bytes.
+ * The surfaces of a loaded scene are ordered by type: spheres, boxes and then plains.
+ */
+public class BinaryScene {
+	public static final String EXTENSION = ".rtsc";
+	private static final int MAGIC = 0x43535452; //"RTSC"
+	//Version 2 added the light cutoff to the header, version 3 the light samples, version 4 the shadow cache flag
+	//and version 5 the single precision flag. Files of older versions are still read.
+	private static final int VERSION = 5;
+
+	/**
+	 * Writes the scene to the given file.
+	 * @throws IllegalArgumentException if the scene has a shape or a light source that the format doesn't support.
+	 */
+	public static void write(Scene scene, Path path) throws IOException {
+		Output out = new Output();
+		out.putInt(MAGIC);
+		out.putInt(VERSION);
+		byte[] name = scene.getName().getBytes(StandardCharsets.UTF_8);
+		out.putInt(name.length);
+		out.put(name);
+		out.putInt(scene.getMaxRecursionLevel());
+		out.putInt(scene.getFactor());
+		out.put(new byte[] { flag(scene.getRenderRefarctions()), flag(scene.getRenderReflections()),
+				flag(scene.getAdaptiveAntiAliasing()), flag(scene.getRussianRoulette()), flag(scene.getPacketTracing()) });
+		out.putDoubles(scene.getAdaptiveThreshold(), scene.getMinThroughput());
+		out.putDoubles(scene.getCamera().asArray());
+		out.putDoubles(scene.getAmbient().asArray());
+		out.putDoubles(scene.getBackgroundColor().asArray());
+		out.putDoubles(scene.getLightCutoff());
+		out.putInt(scene.getLightSamples());
+		out.put(new byte[] { flag(scene.getShadowCache()), flag(scene.getSinglePrecision()) });
+
+		writeLights(scene.getLightSources(), out);
+		writeSurfaces(scene.getSurfaces(), out);
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = out.buffer();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		}
+	}
+
+	private static byte flag(boolean value) {
+		return (byte)(value ? 1 : 0);
+	}
+
+	private static void writeLights(List<Light> lights, Output out) {
+		List<DirectionalLight> directionals = new ArrayList<>();
+		List<PointLight> points = new ArrayList<>();
+		List<Spotlight> spots = new ArrayList<>();
+		for (Light light : lights) {
+			if(light instanceof Spotlight)
+				spots.add((Spotlight)light);
+			else if(light instanceof PointLight)
+				points.add((PointLight)light);
+			else if(light instanceof DirectionalLight)
+				directionals.add((DirectionalLight)light);
+			else
+				throw new IllegalArgumentException("Unsupported light source: " + light.getClass().getName());
+		}
+
+		out.putInt(directionals.size());
+		for (int k = 0; k < 3; k++) {
+			final int axis = k;
+			out.putColumn(directionals, light -> light.direction().asArray()[axis]);
+		}
+		for (int k = 0; k < 3; k++) {
+			final int axis = k;
+			out.putColumn(directionals, light -> light.intensity().asArray()[axis]);
+		}
+
+		out.putInt(points.size());
+		writePointLights(points, out);
+
+		out.putInt(spots.size());
+		writePointLights(spots, out);
+		for (int k = 0; k < 3; k++) {
+			final int axis = k;
+			out.putColumn(spots, light -> light.direction().asArray()[axis]);
+		}
+	}
+
+	private static void writePointLights(List<? extends PointLight> lights, Output out) {
+		for (int k = 0; k < 3; k++) {
+			final int axis = k;
+			out.putColumn(lights, light -> light.position().asArray()[axis]);
+		}
+		for (int k = 0; k < 3; k++) {
+			final int axis = k;
+			out.putColumn(lights, light -> light.intensity().asArray()[axis]);
+		}
+		for (int k = 0; k < 3; k++) {
+			final int factor = k;
+			out.putColumn(lights, light -> light.decayFactors()[factor]);
+		}
+	}
+
+	private static void writeSurfaces(List<Surface> surfaces, Output out) {
+		List<Surface> spheres = new ArrayList<>();
+		List<Surface> boxes = new ArrayList<>();
+		List<Surface> plains = new ArrayList<>();
+		MaterialTable table = new MaterialTable();
+		Map<Surface, Integer> surfaceMaterials = new IdentityHashMap<>();
+		for (Surface surface : surfaces) {
+			Shape shape = surface.shape();
+			if(shape instanceof Sphere)
+				spheres.add(surface);
+			else if(shape instanceof AxisAlignedBox)
+				boxes.add(surface);
+			else if(shape instanceof Plain)
+				plains.add(surface);
+			else
+				throw new IllegalArgumentException("Unsupported shape: " + shape.getClass().getName());
+
+			//equal materials are stored once
+			surfaceMaterials.put(surface, table.intern(surface.material()));
+		}
+		List<Material> materials = new ArrayList<>();
+		for (int i = 0; i < table.size(); i++)
+			materials.add(table.get(i));
+
+		out.putInt(materials.size());
+		for (int k = 0; k < 3; k++) {
+			final int axis = k;
+			out.putColumn(materials, material -> material.Ka.asArray()[axis]);
+		}
+		for (int k = 0; k < 3; k++) {
+			final int axis = k;
+			out.putColumn(materials, material -> material.Kd.asArray()[axis]);
+		}
+		for (int k = 0; k < 3; k++) {
+			final int axis = k;
+			out.putColumn(materials, material -> material.Ks.asArray()[axis]);
+		}
+		out.putColumn(materials, material -> material.reflectionIntensity);
+		out.putColumn(materials, material -> material.refractionIntensity);
+		out.putColumn(materials, material -> material.refractionIndex);
+		out.putIntColumn(materials, material -> material.shininess);
+		out.putIntColumn(materials, material -> material.isTransparent ? 1 : 0);
+
+		out.putInt(spheres.size());
+		for (int k = 0; k < 3; k++) {
+			final int axis = k;
+			out.putColumn(spheres, surface -> ((Sphere)surface.shape()).center().asArray()[axis]);
+		}
+		out.putColumn(spheres, surface -> ((Sphere)surface.shape()).radius());
+		out.putIntColumn(spheres, surfaceMaterials::get);
+
+		out.putInt(boxes.size());
+		for (int k = 0; k < 3; k++) {
+			final int axis = k;
+			out.putColumn(boxes, surface -> ((AxisAlignedBox)surface.shape()).minPoint().asArray()[axis]);
+		}
+		for (int k = 0; k < 3; k++) {
+			final int axis = k;
+			out.putColumn(boxes, surface -> ((AxisAlignedBox)surface.shape()).maxPoint().asArray()[axis]);
+		}
+		out.putIntColumn(boxes, surfaceMaterials::get);
+
+		out.putInt(plains.size());
+		for (int k = 0; k < 4; k++) {
+			final int coefficient = k;
+			out.putColumn(plains, surface -> ((Plain)surface.shape()).coefficients()[coefficient]);
+		}
+		out.putIntColumn(plains, surfaceMaterials::get);
+	}
+
+	/**
+	 * Loads a scene from the given file.
+	 * @throws IOException if the file can't be read, or if it isn't a scene file of a supported version.
+	 */
+	public static Scene read(Path path) throws IOException {
+		MappedByteBuffer mapped;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if(channel.size() > Integer.MAX_VALUE)
+				throw new IOException("The scene file is too large to be mapped: " + path);
+			//the mapping stays valid after the channel is closed
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		try {
+			return read(new Input(mapped));
+		} catch(RuntimeException e) {
+			throw new IOException("Corrupted scene file: " + path, e);
+		}
+	}
+
+	/**
+	 * Loads a scene from the contents of a scene file, e.g. a scene that is sent over the network.
+	 * @param source - the source of the scene, for the error messages.
+	 */
+	public static Scene read(ByteBuffer buffer, String source) throws IOException {
+		try {
+			return read(new Input(buffer));
+		} catch(RuntimeException e) {
+			throw new IOException("Corrupted scene " + source, e);
+		}
+	}
+
+	/**
+	 * @return true if the bytes start like a binary scene file.
+	 */
+	public static boolean isBinaryScene(byte[] data) {
+		return data.length >= 4 && ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).getInt(0) == MAGIC;
+	}
+
+	private static Scene read(Input in) throws IOException {
+		if(in.getInt() != MAGIC)
+			throw new IOException("Not a binary scene file");
+		int version = in.getInt();
+		if(version < 1 || version > VERSION)
+			throw new IOException("Unsupported scene file version: " + version);
+
+		byte[] name = new byte[in.getInt()];
+		in.get(name);
+		Scene scene = new Scene().initName(new String(name, StandardCharsets.UTF_8))
+				.initMaxRecursionLevel(in.getInt())
+				.initAntiAliasingFactor(in.getInt());
+		byte[] flags = new byte[5];
+		in.get(flags);
+		scene.initRenderRefarctions(flags[0] != 0).initRenderReflections(flags[1] != 0)
+				.initAdaptiveAntiAliasing(flags[2] != 0).initRussianRoulette(flags[3] != 0)
+				.initPacketTracing(flags[4] != 0);
+		double[] header = in.getDoubles(2 + 17 + 3 + 3);
+		scene.initAdaptiveThreshold(header[0]).initMinThroughput(header[1])
+				.initCamera(PinholeCamera.fromArray(Arrays.copyOfRange(header, 2, 19)))
+				.initAmbient(new Vec(header[19], header[20], header[21]))
+				.initBackgroundColor(new Vec(header[22], header[23], header[24]));
+		if(version >= 2)
+			scene.initLightCutoff(in.getDoubles(1)[0]);
+		if(version >= 3)
+			scene.initLightSamples(in.getInt());
+		if(version >= 4) {
+			byte[] options = new byte[version >= 5 ? 2 : 1];
+			in.get(options);
+			scene.initShadowCache(options[0] != 0);
+			if(version >= 5)
+				scene.initSinglePrecision(options[1] != 0);
+		}
+
+		readLights(scene, in);
+		readSurfaces(scene, in);
+		return scene;
+	}
+
+	private static void readLights(Scene scene, Input in) {
+		int n = in.getInt();
+		double[][] c = in.getColumns(n, 6);
+		for (int i = 0; i < n; i++)
+			scene.addLightSource(new DirectionalLight().initDirection(new Vec(c[0][i], c[1][i], c[2][i]))
+					.initIntensity(new Vec(c[3][i], c[4][i], c[5][i])));
+
+		n = in.getInt();
+		c = in.getColumns(n, 9);
+		for (int i = 0; i < n; i++)
+			scene.addLightSource(initPointLight(new PointLight(), c, i));
+
+		n = in.getInt();
+		c = in.getColumns(n, 9);
+		double[][] directions = in.getColumns(n, 3);
+		for (int i = 0; i < n; i++)
+			scene.addLightSource(initPointLight(new Spotlight(), c, i)
+					.initDirection(new Vec(directions[0][i], directions[1][i], directions[2][i])));
+	}
+
+	private static <T extends PointLight> T initPointLight(T light, double[][] c, int i) {
+		light.initPosition(new Point(c[0][i], c[1][i], c[2][i])).initIntensity(new Vec(c[3][i], c[4][i], c[5][i]))
+				.initDecayFactors(c[6][i], c[7][i], c[8][i]);
+		return light;
+	}
+
+	private static void readSurfaces(Scene scene, Input in) {
+		int n = in.getInt();
+		double[][] c = in.getColumns(n, 12);
+		int[] shininess = in.getInts(n);
+		int[] transparent = in.getInts(n);
+		Material[] materials = new Material[n];
+		for (int i = 0; i < n; i++)
+			materials[i] = new Material().initKa(new Vec(c[0][i], c[1][i], c[2][i]))
+					.initKd(new Vec(c[3][i], c[4][i], c[5][i])).initKs(new Vec(c[6][i], c[7][i], c[8][i]))
+					.initReflectionIntensity(c[9][i]).initRefractionIntensity(c[10][i])
+					.initRefractionIndex(c[11][i]).initShininess(shininess[i]).initIsTransparent(transparent[i] != 0);
+
+		n = in.getInt();
+		c = in.getColumns(n, 4);
+		int[] indices = in.getInts(n);
+		for (int i = 0; i < n; i++)
+			scene.addSurface(new Surface(new Sphere(new Point(c[0][i], c[1][i], c[2][i]), c[3][i]),
+					materials[indices[i]]));
+
+		n = in.getInt();
+		c = in.getColumns(n, 6);
+		indices = in.getInts(n);
+		for (int i = 0; i < n; i++)
+			scene.addSurface(new Surface(new AxisAlignedBox(new Point(c[0][i], c[1][i], c[2][i]),
+					new Point(c[3][i], c[4][i], c[5][i])), materials[indices[i]]));
+
+		n = in.getInt();
+		c = in.getColumns(n, 4);
+		indices = in.getInts(n);
+		for (int i = 0; i < n; i++)
+			scene.addSurface(new Surface(new Plain(c[0][i], c[1][i], c[2][i], c[3][i]), materials[indices[i]]));
+	}
+
+	/**
+	 * A growing little endian buffer.
+	 */
+	private static class Output {
+		private ByteBuffer buffer = ByteBuffer.allocate(1 << 12).order(ByteOrder.LITTLE_ENDIAN);
+
+		interface DoubleField<T> {
+			double get(T element);
+		}
+
+		interface IntField<T> {
+			int get(T element);
+		}
+
+		private void ensure(int bytes) {
+			if(buffer.remaining() >= bytes)
+				return;
+			ByteBuffer bigger = ByteBuffer.allocate(Math.max(2 * buffer.capacity(), buffer.position() + bytes))
+					.order(ByteOrder.LITTLE_ENDIAN);
+			buffer.flip();
+			bigger.put(buffer);
+			buffer = bigger;
+		}
+
+		private void align() {
+			int padding = (8 - buffer.position() % 8) % 8;
+			ensure(padding);
+			for (int i = 0; i < padding; i++)
+				buffer.put((byte)0);
+		}
+
+		void putInt(int value) {
+			ensure(4);
+			buffer.putInt(value);
+		}
+
+		void put(byte[] bytes) {
+			ensure(bytes.length);
+			buffer.put(bytes);
+		}
+
+		void putDoubles(double... values) {
+			align();
+			ensure(8 * values.length);
+			for (double value : values)
+				buffer.putDouble(value);
+		}
+
+		<T> void putColumn(List<? extends T> elements, DoubleField<T> field) {
+			align();
+			ensure(8 * elements.size());
+			for (T element : elements)
+				buffer.putDouble(field.get(element));
+		}
+
+		<T> void putIntColumn(List<? extends T> elements, IntField<T> field) {
+			align();
+			ensure(4 * elements.size());
+			for (T element : elements)
+				buffer.putInt(field.get(element));
+		}
+
+		ByteBuffer buffer() {
+			ByteBuffer written = buffer.duplicate();
+			written.flip();
+			return written;
+		}
+	}
+
+	/**
+	 * Reads the values that Output writes, with bulk copies of the columns.
+	 */
+	private static class Input {
+		private final ByteBuffer buffer;
+
+		Input(ByteBuffer buffer) {
+			this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		private void align() {
+			buffer.position(buffer.position() + (8 - buffer.position() % 8) % 8);
+		}
+
+		int getInt() {
+			return buffer.getInt();
+		}
+
+		void get(byte[] bytes) {
+			buffer.get(bytes);
+		}
+
+		double[] getDoubles(int n) {
+			align();
+			double[] values = new double[n];
+			buffer.asDoubleBuffer().get(values);
+			buffer.position(buffer.position() + 8 * n);
+			return values;
+		}
+
+		double[][] getColumns(int n, int columns) {
+			double[][] values = new double[columns][];
+			for (int i = 0; i < columns; i++)
+				values[i] = getDoubles(n);
+			return values;
+		}
+
+		int[] getInts(int n) {
+			align();
+			int[] values = new int[n];
+			buffer.asIntBuffer().get(values);
+			buffer.position(buffer.position() + 4 * n);
+			return values;
+		}
+	}
+}
@@ -0,0 +1,342 @@
+package edu.cg.scene.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import edu.cg.algebra.Point;
+import edu.cg.algebra.Vec;
+import edu.cg.menu.GsonMaker;
+import edu.cg.scene.Scene;
+import edu.cg.scene.camera.PinholeCamera;
+import edu.cg.scene.lightSources.Light;
+import edu.cg.scene.objects.AxisAlignedBox;
+import edu.cg.scene.objects.Material;
+import edu.cg.scene.objects.MaterialKey;
+import edu.cg.scene.objects.Plain;
+import edu.cg.scene.objects.Shape;
+import edu.cg.scene.objects.Sphere;
+import edu.cg.scene.objects.Surface;
+
+/**
+ * Loads JSON scene files (the format that GsonMaker writes) with a streaming JsonReader,
+ * instead of reading the whole file into a string and deserializing it into an object graph.
+ * The spheres, boxes and plains are parsed field by field into reused buffers, and only the final
+ * shapes and surfaces are created. Equal materials are shared by their surfaces, so the memory
+ * that the loading takes is about the size of the loaded scene.
+ * Light sources, the camera and shapes of other types are few, and are deserialized by Gson.
+ */
+public class JsonSceneReader {
+	private static final String CLASSNAME = "CLASSNAME";
+	private static final String DATA = "DATA";
+
+	private final JsonReader reader;
+	private final Gson gson = GsonMaker.getInstance();
+	private final Map<MaterialKey, Material> materials = new HashMap<>();
+	private final double[] materialValues = new double[MaterialKey.SIZE];
+
+	//the values of the fields that a shape or a material doesn't specify
+	private final Sphere defaultSphere = new Sphere();
+	private final AxisAlignedBox defaultBox = new AxisAlignedBox();
+	private final double[] defaultCoefficients = new Plain().coefficients();
+	private final double[] defaultMaterial = MaterialKey.values(new Material(), new double[MaterialKey.SIZE]);
+
+	//the fields of the shape that is parsed
+	private final double[] center = new double[3];
+	private final double[] minPoint = new double[3];
+	private final double[] maxPoint = new double[3];
+	private final double[] coefficients = new double[4];
+	private double radius;
+
+	private JsonSceneReader(Reader reader) {
+		this.reader = new JsonReader(reader);
+		this.reader.setLenient(true);
+	}
+
+	public static Scene read(Path path) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			return read(reader, "file " + path);
+		}
+	}
+
+	/**
+	 * Reads a scene from a stream of JSON text, e.g. a scene that is sent over the network.
+	 * @param source - the source of the scene, for the error messages.
+	 */
+	public static Scene read(Reader reader, String source) throws IOException {
+		try {
+			return new JsonSceneReader(reader).readScene();
+		} catch(IllegalStateException | NumberFormatException | JsonParseException e) {
+			throw new IOException("Malformed scene " + source + ": " + e.getMessage(), e);
+		}
+	}
+
+	private Scene readScene() throws IOException {
+		Scene scene = new Scene();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if(reader.peek() == JsonToken.NULL) {
+				reader.nextNull();
+				continue;
+			}
+			switch(name) {
+			case "name":
+				scene.initName(reader.nextString());
+				break;
+			case "maxRecursionLevel":
+				scene.initMaxRecursionLevel(reader.nextInt());
+				break;
+			case "antiAliasingFactor":
+				scene.initAntiAliasingFactor(reader.nextInt());
+				break;
+			case "renderRefarctions":
+				scene.initRenderRefarctions(reader.nextBoolean());
+				break;
+			case "renderReflections":
+				scene.initRenderReflections(reader.nextBoolean());
+				break;
+			case "adaptiveAntiAliasing":
+				scene.initAdaptiveAntiAliasing(reader.nextBoolean());
+				break;
+			case "adaptiveThreshold":
+				scene.initAdaptiveThreshold(reader.nextDouble());
+				break;
+			case "minThroughput":
+				scene.initMinThroughput(reader.nextDouble());
+				break;
+			case "russianRoulette":
+				scene.initRussianRoulette(reader.nextBoolean());
+				break;
+			case "packetTracing":
+				scene.initPacketTracing(reader.nextBoolean());
+				break;
+			case "lightCutoff":
+				scene.initLightCutoff(reader.nextDouble());
+				break;
+			case "lightSamples":
+				scene.initLightSamples(reader.nextInt());
+				break;
+			case "shadowCache":
+				scene.initShadowCache(reader.nextBoolean());
+				break;
+			case "singlePrecision":
+				scene.initSinglePrecision(reader.nextBoolean());
+				break;
+			case "camera":
+				scene.initCamera((PinholeCamera)gson.fromJson(reader, PinholeCamera.class));
+				break;
+			case "ambient":
+				scene.initAmbient((Vec)gson.fromJson(reader, Vec.class));
+				break;
+			case "backgroundColor":
+				scene.initBackgroundColor((Vec)gson.fromJson(reader, Vec.class));
+				break;
+			case "lightSources":
+				reader.beginArray();
+				while (reader.hasNext())
+					scene.addLightSource((Light)gson.fromJson(reader, Light.class));
+				reader.endArray();
+				break;
+			case "surfaces":
+				reader.beginArray();
+				while (reader.hasNext())
+					scene.addSurface(readSurface());
+				reader.endArray();
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		return scene;
+	}
+
+	private Surface readSurface() throws IOException {
+		Shape shape = null;
+		Material material = null;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if(name.equals("shape") && reader.peek() != JsonToken.NULL)
+				shape = readShape();
+			else if(name.equals("material") && reader.peek() != JsonToken.NULL)
+				material = readMaterial();
+			else
+				reader.skipValue();
+		}
+		reader.endObject();
+		return new Surface(shape, material);
+	}
+
+	private Shape readShape() throws IOException {
+		String className = null;
+		Shape shape = null;
+		JsonElement data = null; //the data of a shape whose class name comes after it
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if(name.equals(CLASSNAME))
+				className = reader.nextString();
+			else if(name.equals(DATA) && className != null)
+				shape = readShape(className);
+			else if(name.equals(DATA))
+				data = new JsonParser().parse(reader);
+			else
+				reader.skipValue();
+		}
+		reader.endObject();
+		if(className == null)
+			throw new JsonParseException("A shape without a " + CLASSNAME);
+		if(shape == null && data != null)
+			shape = gson.fromJson(data, new GsonMaker<Shape>().getObjectClass(className));
+		return shape;
+	}
+
+	private Shape readShape(String className) throws IOException {
+		if(className.equals(Sphere.class.getName())) {
+			copy(defaultSphere.center(), center);
+			radius = defaultSphere.radius();
+			readFields();
+			return new Sphere(new Point(center[0], center[1], center[2]), radius);
+		}
+		if(className.equals(AxisAlignedBox.class.getName())) {
+			copy(defaultBox.minPoint(), minPoint);
+			copy(defaultBox.maxPoint(), maxPoint);
+			readFields();
+			return new AxisAlignedBox(new Point(minPoint[0], minPoint[1], minPoint[2]),
+					new Point(maxPoint[0], maxPoint[1], maxPoint[2]));
+		}
+		if(className.equals(Plain.class.getName())) {
+			System.arraycopy(defaultCoefficients, 0, coefficients, 0, 4);
+			readFields();
+			return new Plain(coefficients[0], coefficients[1], coefficients[2], coefficients[3]);
+		}
+		return gson.fromJson(reader, new GsonMaker<Shape>().getObjectClass(className));
+	}
+
+	private static void copy(Point point, double[] values) {
+		values[0] = point.x;
+		values[1] = point.y;
+		values[2] = point.z;
+	}
+
+	/**
+	 * Reads the data of a sphere, a box or a plain into the shape buffers.
+	 */
+	private void readFields() throws IOException {
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			switch(name) {
+			case "center":
+				readVector(center, 0);
+				break;
+			case "radius":
+				radius = reader.nextDouble();
+				break;
+			case "minPoint":
+				readVector(minPoint, 0);
+				break;
+			case "maxPoint":
+				readVector(maxPoint, 0);
+				break;
+			case "a":
+				coefficients[0] = reader.nextDouble();
+				break;
+			case "b":
+				coefficients[1] = reader.nextDouble();
+				break;
+			case "c":
+				coefficients[2] = reader.nextDouble();
+				break;
+			case "d":
+				coefficients[3] = reader.nextDouble();
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+	}
+
+	/**
+	 * Reads a point or a vector {x, y, z} into values[offset..offset+2].
+	 */
+	private void readVector(double[] values, int offset) throws IOException {
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if(name.equals("x"))
+				values[offset] = reader.nextDouble();
+			else if(name.equals("y"))
+				values[offset + 1] = reader.nextDouble();
+			else if(name.equals("z"))
+				values[offset + 2] = reader.nextDouble();
+			else
+				reader.skipValue();
+		}
+		reader.endObject();
+	}
+
+	/**
+	 * Reads a material. A material that is equal to a previous one is not created again.
+	 */
+	private Material readMaterial() throws IOException {
+		double[] values = materialValues;
+		System.arraycopy(defaultMaterial, 0, values, 0, values.length);
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			switch(name) {
+			case "Ka":
+				readVector(values, 0);
+				break;
+			case "Kd":
+				readVector(values, 3);
+				break;
+			case "Ks":
+				readVector(values, 6);
+				break;
+			case "reflectionIntensity":
+				values[9] = reader.nextDouble();
+				break;
+			case "shininess":
+				values[10] = reader.nextInt();
+				break;
+			case "isTransparent":
+				values[11] = reader.nextBoolean() ? 1 : 0;
+				break;
+			case "refractionIntensity":
+				values[12] = reader.nextDouble();
+				break;
+			case "refractionIndex":
+				values[13] = reader.nextDouble();
+				break;
+			default:
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+
+		MaterialKey key = new MaterialKey(values);
+		Material material = materials.get(key);
+		if(material == null) {
+			material = key.toMaterial();
+			materials.put(key, material);
+		}
+		return material;
+	}
+}
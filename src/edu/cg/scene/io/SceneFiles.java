@@ -0,0 +1,32 @@
+package edu.cg.scene.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+import edu.cg.scene.Scene;
+
+/**
+ * Loads scene files of all the supported formats: binary scenes (by their extension) and JSON scenes,
+ * which are streamed by JsonSceneReader.
+ */
+public class SceneFiles {
+	public static Scene load(String sceneFile) throws IOException {
+		if(sceneFile.endsWith(BinaryScene.EXTENSION))
+			return BinaryScene.read(Paths.get(sceneFile));
+		return JsonSceneReader.read(Paths.get(sceneFile));
+	}
+
+	/**
+	 * Loads a scene from the contents of a scene file of either format (told apart by the binary header).
+	 * @param source - the source of the scene, for the error messages.
+	 */
+	public static Scene read(byte[] data, String source) throws IOException {
+		if(BinaryScene.isBinaryScene(data))
+			return BinaryScene.read(ByteBuffer.wrap(data), source);
+		return JsonSceneReader.read(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8), source);
+	}
+}
@@ -1,10 +1,8 @@
 package edu.cg.scene.lightSources;
 
-import edu.cg.algebra.Hit;
 import edu.cg.algebra.Point;
 import edu.cg.algebra.Ray;
 import edu.cg.algebra.Vec;
-import edu.cg.scene.objects.Surface;
 
 public class DirectionalLight extends Light {
 	private Vec direction = new Vec(0, -1, -1);
@@ -13,6 +11,10 @@ public class DirectionalLight extends Light {
 		this.direction = direction;
 		return this;
 	}
+	
+	public Vec direction() {
+		return direction;
+	}
 
 	@Override
 	public String toString() {
@@ -32,17 +34,13 @@ public class DirectionalLight extends Light {
 	}
 
 	@Override
-	public boolean isOccludedBy(Surface surface, Ray rayToLight) {
-        Hit hitSurface = surface.intersect(rayToLight);
-        if( hitSurface != null ){
-            return true;
-        }
-        return false;
+	public double distanceToLight(Point fromPoint) {
+		return Double.POSITIVE_INFINITY;
 	}
 
 	@Override
-	public Vec intensity(Point hittingPoint, Ray rayToLight) {
-		return new Vec(intensity);
+	public double attenuation(Point hittingPoint, Ray rayToLight) {
+		return 1;
 	}
 
 }
@@ -1,12 +1,14 @@
 package edu.cg.scene.lightSources;
 
+import edu.cg.algebra.MutableVec;
 import edu.cg.algebra.Point;
 import edu.cg.algebra.Ray;
 import edu.cg.algebra.Vec;
-import edu.cg.scene.objects.Surface;
+import edu.cg.scene.objects.Intersectable;
 
 public abstract class Light {
 	protected Vec intensity = new Vec(1, 1, 1); //white color
+	private transient int index = -1; //the index of the light in its scene, for per light caches
 	
 	@Override
 	public String toString() {
@@ -19,6 +21,25 @@ public abstract class Light {
 		return this;
 	}
 	
+	/**
+	 * Sets the index of the light in the light sources of its scene. The scene sets it when it is prepared.
+	 */
+	public Light initIndex(int index) {
+		this.index = index;
+		return this;
+	}
+	
+	public int index() {
+		return index;
+	}
+	
+	/**
+	 * @return the intensity of the light source, before the attenuation.
+	 */
+	public Vec intensity() {
+		return intensity;
+	}
+	
 	/**
 	 * Constructs a ray originated from the given point to the light.
 	 * @param fromPoint - The initial point of the ray
@@ -27,13 +48,41 @@ public abstract class Light {
 	public abstract Ray rayToLight(Point fromPoint);
 	
 	/**
-	 * Checks if the given surface occludes the light-source. The surface occludes the light source
-	 * if the given ray first intersects the surface before reaching the light source.
-	 * @param surface -The given surface
+	 * Returns the distance from the given point to the light source.
+	 * @param fromPoint - The given point
+	 * @return the distance to the light source (infinity for a directional light).
+	 */
+	public abstract double distanceToLight(Point fromPoint);
+	
+	/**
+	 * Checks if the given object occludes the light-source. The object occludes the light source
+	 * if the given ray first intersects the object before reaching the light source.
+	 * The object may be a single surface or the whole scene (e.g. its bounding volume hierarchy),
+	 * the query stops at the first blocker.
+	 * @param occluder -The given object
 	 * @param rayToLight - the ray to the light source
-	 * @return true if the ray is occluded by the surface..
+	 * @return true if the ray is occluded by the object.
 	 */
-	public abstract boolean isOccludedBy(Surface surface, Ray rayToLight);
+	public boolean isOccludedBy(Intersectable occluder, Ray rayToLight) {
+		return occluder.occluded(rayToLight, distanceToLight(rayToLight.source()));
+	}
+	
+	/**
+	 * Returns the distance from the light source beyond which its intensity (after the attenuation, in every channel)
+	 * is below the given threshold, so the light can be culled from the points that are farther.
+	 * @return the distance, or infinity if the light has no such distance (e.g. a directional light).
+	 */
+	public double influenceRadius(double threshold) {
+		return Double.POSITIVE_INFINITY;
+	}
+	
+	/**
+	 * Returns the factor of the light intensity at the specified point (decay, spotlight direction etc.).
+	 * @param hittingPoint - The given point
+	 * @param rayToLight - A ray to the light source (this is relevant for point-light and spotlight)
+	 * @return the factor that multiplies the intensity of the light source.
+	 */
+	public abstract double attenuation(Point hittingPoint, Ray rayToLight);
 	
 	/**
 	 * Returns the light intensity at the specified point.
@@ -41,5 +90,16 @@ public abstract class Light {
 	 * @param rayToLight - A ray to the light source (this is relevant for point-light and spotlight)
 	 * @return A vector representing the light intensity (the r,g and b channels). 
 	 */
-	public abstract Vec intensity(Point hittingPoint, Ray rayToLight);
+	public Vec intensity(Point hittingPoint, Ray rayToLight) {
+		return intensity.mult(attenuation(hittingPoint, rayToLight));
+	}
+	
+	/**
+	 * Same as intensity(hittingPoint, rayToLight), but writes the result into the given vector.
+	 * @return the given vector.
+	 */
+	public MutableVec intensity(Point hittingPoint, Ray rayToLight, MutableVec out) {
+		double attenuation = attenuation(hittingPoint, rayToLight);
+		return out.set(attenuation*intensity.x, attenuation*intensity.y, attenuation*intensity.z);
+	}
 }
@@ -0,0 +1,147 @@
+package edu.cg.scene.lightSources;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.cg.algebra.Point;
+
+/**
+ * A uniform grid over the spheres of influence of the light sources (see Light.influenceRadius).
+ * Every cell lists the lights whose sphere overlaps it, so a point is shaded only by the lights of its cell.
+ * Lights without a bounded influence (e.g. directional lights) are listed in every cell, and are the only lights
+ * of the points that are out of the grid. Lights whose influence radius is 0 are never listed.
+ */
+public class LightGrid {
+	//The grid has about this many cells per bounded light, and at most MAX_CELLS cells along every axis.
+	private static final int CELLS_PER_LIGHT = 8;
+	private static final int MAX_CELLS = 32;
+
+	private final Light[] global;
+	private final Light[][] cells;
+	private final int nx, ny, nz;
+	private final double minX, minY, minZ;
+	private final double invX, invY, invZ; //cells per unit along every axis
+	private final int lightsCount;
+	private final int boundedCount;
+
+	/**
+	 * @param threshold - the intensity that the lights are culled below.
+	 */
+	public LightGrid(List<Light> lights, double threshold) {
+		List<Light> globalList = new ArrayList<>();
+		List<PointLight> bounded = new ArrayList<>();
+		List<Double> radii = new ArrayList<>();
+		double[] bounds = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+				Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		for (Light light : lights) {
+			double radius = light.influenceRadius(threshold);
+			if(radius == 0)
+				continue;
+			if(!(radius < Double.POSITIVE_INFINITY) || !(light instanceof PointLight)) {
+				globalList.add(light);
+				continue;
+			}
+			PointLight pointLight = (PointLight)light;
+			Point p = pointLight.position();
+			bounded.add(pointLight);
+			radii.add(radius);
+			bounds[0] = Math.min(bounds[0], p.x - radius);
+			bounds[1] = Math.min(bounds[1], p.y - radius);
+			bounds[2] = Math.min(bounds[2], p.z - radius);
+			bounds[3] = Math.max(bounds[3], p.x + radius);
+			bounds[4] = Math.max(bounds[4], p.y + radius);
+			bounds[5] = Math.max(bounds[5], p.z + radius);
+		}
+		lightsCount = lights.size();
+		boundedCount = bounded.size();
+		global = globalList.toArray(new Light[0]);
+
+		if(bounded.isEmpty()) {
+			nx = ny = nz = 0;
+			minX = minY = minZ = invX = invY = invZ = 0;
+			cells = new Light[0][];
+			return;
+		}
+
+		//cubic cells, whose number is about CELLS_PER_LIGHT per light
+		double ex = bounds[3] - bounds[0], ey = bounds[4] - bounds[1], ez = bounds[5] - bounds[2];
+		double cellSize = Math.cbrt(ex * ey * ez / (CELLS_PER_LIGHT * bounded.size()));
+		nx = cellsCount(ex, cellSize);
+		ny = cellsCount(ey, cellSize);
+		nz = cellsCount(ez, cellSize);
+		minX = bounds[0];
+		minY = bounds[1];
+		minZ = bounds[2];
+		invX = nx / ex;
+		invY = ny / ey;
+		invZ = nz / ez;
+
+		List<List<Light>> cellLists = new ArrayList<>();
+		for (int i = 0; i < nx * ny * nz; i++)
+			cellLists.add(new ArrayList<>(globalList));
+		double sx = ex / nx, sy = ey / ny, sz = ez / nz;
+		for (int l = 0; l < bounded.size(); l++) {
+			Point p = bounded.get(l).position();
+			double r = radii.get(l);
+			int x0 = cell(p.x - r, minX, invX, nx), x1 = cell(p.x + r, minX, invX, nx);
+			int y0 = cell(p.y - r, minY, invY, ny), y1 = cell(p.y + r, minY, invY, ny);
+			int z0 = cell(p.z - r, minZ, invZ, nz), z1 = cell(p.z + r, minZ, invZ, nz);
+			for (int z = z0; z <= z1; z++)
+				for (int y = y0; y <= y1; y++)
+					for (int x = x0; x <= x1; x++) {
+						//the distance of the light from the cell
+						double dx = distance(p.x, minX + x*sx, minX + (x + 1)*sx);
+						double dy = distance(p.y, minY + y*sy, minY + (y + 1)*sy);
+						double dz = distance(p.z, minZ + z*sz, minZ + (z + 1)*sz);
+						if(dx*dx + dy*dy + dz*dz <= r*r)
+							cellLists.get((z*ny + y)*nx + x).add(bounded.get(l));
+					}
+		}
+		cells = new Light[cellLists.size()][];
+		for (int i = 0; i < cells.length; i++)
+			cells[i] = cellLists.get(i).toArray(new Light[0]);
+	}
+
+	private static int cellsCount(double extent, double cellSize) {
+		if(!(extent > 0) || !(cellSize > 0))
+			return 1;
+		return (int)Math.max(1, Math.min(MAX_CELLS, Math.ceil(extent / cellSize)));
+	}
+
+	private static int cell(double value, double min, double inv, int n) {
+		return Math.max(0, Math.min(n - 1, (int)((value - min) * inv)));
+	}
+
+	private static double distance(double value, double from, double to) {
+		return value < from ? from - value : value > to ? value - to : 0;
+	}
+
+	/**
+	 * @return the lights that may contribute to the given point. The array must not be modified.
+	 */
+	public Light[] lights(Point p) {
+		double fx = (p.x - minX) * invX, fy = (p.y - minY) * invY, fz = (p.z - minZ) * invZ;
+		//out of the grid (or no grid at all), only the global lights reach the point
+		if(!(fx >= 0 & fx < nx & fy >= 0 & fy < ny & fz >= 0 & fz < nz))
+			return global;
+		return cells[((int)fz*ny + (int)fy)*nx + (int)fx];
+	}
+
+	/**
+	 * @return the number of the lights that the grid was built over.
+	 */
+	public int lightsCount() {
+		return lightsCount;
+	}
+
+	/**
+	 * @return the number of the lights with a bounded influence, which are placed in the cells.
+	 */
+	public int boundedCount() {
+		return boundedCount;
+	}
+
+	public int cellsCount() {
+		return cells.length;
+	}
+}
@@ -0,0 +1,146 @@
+package edu.cg.scene.lightSources;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import edu.cg.algebra.Point;
+
+/**
+ * A binary tree over point lights (and spotlights), for sampling a light in proportion to its estimated
+ * contribution to a point, in time that is logarithmic in the number of lights.
+ * Every node has the bounds of the positions of its lights, the sum of their peak intensities and the smallest
+ * decay factors among them. The sampling descends from the root, and picks every child in proportion to
+ * its importance: the power of the child over the decay (Fatt) at its distance from the point.
+ * A leaf is a single light, whose importance is estimated exactly: its peak intensity times the spotlight
+ * factor over its decay. A light whose estimate is 0 contributes nothing, so the sampling is unbiased.
+ */
+public class LightTree {
+	private final PointLight[] lights; //the lights of the leaves, in the order of the tree
+	//The nodes are flattened in depth first order, so the first child of an inner node is the next node.
+	private final double[] bounds; //6 values per node: min x, y, z and then max x, y, z
+	private final double[] power; //the sum of the peak intensities of the lights of the node
+	private final double[] decay; //3 values per node: the smallest kq, kl and kc of the lights of the node
+	private final int[] data; //inner node: index of the second child, leaf: index of its light
+	private final boolean[] leaf;
+	private int nodes = 0;
+
+	public LightTree(List<PointLight> lights) {
+		int n = lights.size();
+		this.lights = lights.toArray(new PointLight[0]);
+		int maxNodes = Math.max(1, 2*n - 1);
+		bounds = new double[6 * maxNodes];
+		power = new double[maxNodes];
+		decay = new double[3 * maxNodes];
+		data = new int[maxNodes];
+		leaf = new boolean[maxNodes];
+		if(n > 0)
+			build(0, n);
+	}
+
+	public int size() {
+		return lights.length;
+	}
+
+	private int build(int start, int end) {
+		int node = nodes++;
+		double[] b = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+				Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		double[] d = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY };
+		double sum = 0;
+		for (int i = start; i < end; i++) {
+			PointLight light = lights[i];
+			Point p = light.position();
+			b[0] = Math.min(b[0], p.x);
+			b[1] = Math.min(b[1], p.y);
+			b[2] = Math.min(b[2], p.z);
+			b[3] = Math.max(b[3], p.x);
+			b[4] = Math.max(b[4], p.y);
+			b[5] = Math.max(b[5], p.z);
+			d[0] = Math.min(d[0], light.kq);
+			d[1] = Math.min(d[1], light.kl);
+			d[2] = Math.min(d[2], light.kc);
+			sum += light.peakIntensity();
+		}
+		System.arraycopy(b, 0, bounds, 6*node, 6);
+		System.arraycopy(d, 0, decay, 3*node, 3);
+		power[node] = sum;
+
+		if(end - start == 1) {
+			leaf[node] = true;
+			data[node] = start;
+			return node;
+		}
+
+		//a median split along the longest axis of the positions
+		int axis = 0;
+		for (int i = 1; i < 3; i++)
+			if(b[i + 3] - b[i] > b[axis + 3] - b[axis])
+				axis = i;
+		int splitAxis = axis;
+		List<PointLight> range = new ArrayList<>();
+		for (int i = start; i < end; i++)
+			range.add(lights[i]);
+		range.sort(Comparator.comparingDouble(light -> coordinate(light.position(), splitAxis)));
+		for (int i = start; i < end; i++)
+			lights[i] = range.get(i - start);
+
+		int mid = (start + end) / 2;
+		build(start, mid);
+		data[node] = build(mid, end);
+		return node;
+	}
+
+	private static double coordinate(Point p, int axis) {
+		return axis == 0 ? p.x : axis == 1 ? p.y : p.z;
+	}
+
+	/**
+	 * Samples a light in proportion to its estimated contribution to the point.
+	 * @param pdf - the probability of the sampled light is written into pdf[0].
+	 * @return the sampled light, or null if the tree is empty.
+	 */
+	public PointLight sample(Point p, Random random, double[] pdf) {
+		if(lights.length == 0)
+			return null;
+		double probability = 1;
+		int node = 0;
+		while(!leaf[node]) {
+			int left = node + 1, right = data[node];
+			double wl = importance(left, p), wr = importance(right, p);
+			double pl = wl + wr > 0 ? wl / (wl + wr) : 0.5;
+			if(random.nextDouble() < pl) {
+				probability *= pl;
+				node = left;
+			} else {
+				probability *= 1 - pl;
+				node = right;
+			}
+		}
+		pdf[0] = probability;
+		return lights[data[node]];
+	}
+
+	private double importance(int node, Point p) {
+		if(leaf[node]) {
+			PointLight light = lights[data[node]];
+			double distance = light.distanceToLight(p);
+			//the cone factor already scales by the direction of a spotlight, so it is applied to the base intensity
+			double weight = light.baseIntensity() * Math.abs(light.coneFactor(p, distance)) / light.getFatt(distance);
+			return weight >= 0 && weight < Double.POSITIVE_INFINITY ? weight : light.peakIntensity();
+		}
+		//the decay at the distance of the nearest point of the node's bounds, with its smallest factors
+		int offset = 6 * node;
+		double dx = distance(p.x, bounds[offset], bounds[offset + 3]);
+		double dy = distance(p.y, bounds[offset + 1], bounds[offset + 4]);
+		double dz = distance(p.z, bounds[offset + 2], bounds[offset + 5]);
+		double distance = Math.sqrt(dx*dx + dy*dy + dz*dz);
+		double fatt = decay[3*node] * distance * distance + decay[3*node + 1] * distance + decay[3*node + 2];
+		return fatt > 0 ? power[node] / fatt : power[node];
+	}
+
+	private static double distance(double value, double from, double to) {
+		return value < from ? from - value : value > to ? value - to : 0;
+	}
+}
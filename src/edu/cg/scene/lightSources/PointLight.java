@@ -1,10 +1,8 @@
 package edu.cg.scene.lightSources;
 
-import edu.cg.algebra.Hit;
 import edu.cg.algebra.Point;
 import edu.cg.algebra.Ray;
 import edu.cg.algebra.Vec;
-import edu.cg.scene.objects.Surface;
 
 public class PointLight extends Light {
 	protected Point position;
@@ -43,6 +41,17 @@ public class PointLight extends Light {
 		this.kc = kc;
 		return this;
 	}
+	
+	public Point position() {
+		return position;
+	}
+	
+	/**
+	 * @return the decay factors {kq, kl, kc}.
+	 */
+	public double[] decayFactors() {
+		return new double[] { kq, kl, kc };
+	}
 
 	@Override
 	public Ray rayToLight(Point fromPoint) {
@@ -50,22 +59,54 @@ public class PointLight extends Light {
 	}
 
 	@Override
-	public boolean isOccludedBy(Surface surface, Ray rayToLight) {
-
-		Hit hitSurface = surface.intersect(rayToLight);
-		if( hitSurface != null && hitSurface.t() <  position.dist(rayToLight.source())){
-			return true;
-		}
-		return false;
+	public double distanceToLight(Point fromPoint) {
+		double dx = position.x - fromPoint.x, dy = position.y - fromPoint.y, dz = position.z - fromPoint.z;
+		return Math.sqrt(dx*dx + dy*dy + dz*dz);
 	}
 
 	@Override
-	public Vec intensity(Point hittingPoint, Ray rayToLight) {
-		double distance = position.dist(rayToLight.source());
+	public double attenuation(Point hittingPoint, Ray rayToLight) {
+		double distance = distanceToLight(rayToLight.source());
 		//double distance = position.dist(hittingPoint);
 		double Fatt = getFatt(distance);
-		Vec IL = intensity.mult(1.0 /Fatt);
-		return IL;
+		return 1.0 / Fatt;
+	}
+
+	@Override
+	public double influenceRadius(double threshold) {
+		//beyond the radius, Fatt is bigger than maxFatt
+		double maxFatt = peakIntensity() / threshold;
+		if(!(maxFatt < Double.POSITIVE_INFINITY) || kq < 0 || kl < 0)
+			return Double.POSITIVE_INFINITY;
+		if(kc >= maxFatt)
+			return 0;
+		if(kq > 0)
+			return (-kl + Math.sqrt(kl*kl + 4*kq*(maxFatt - kc))) / (2*kq);
+		if(kl > 0)
+			return (maxFatt - kc) / kl;
+		return Double.POSITIVE_INFINITY;
+	}
+	
+	/**
+	 * @return the factor of the intensity at the given point that doesn't depend on the decay (1 for a point light).
+	 * @param distance - the distance of the point from the light.
+	 */
+	protected double coneFactor(Point p, double distance) {
+		return 1;
+	}
+	
+	/**
+	 * @return a bound of the biggest magnitude of the channels of the light at any point, before the decay.
+	 */
+	protected double peakIntensity() {
+		return baseIntensity();
+	}
+	
+	/**
+	 * @return the biggest magnitude of the channels of the light's intensity, without the cone factor.
+	 */
+	protected final double baseIntensity() {
+		return Math.max(Math.abs(intensity.x), Math.max(Math.abs(intensity.y), Math.abs(intensity.z)));
 	}
 
 	protected double getFatt(double distance) {
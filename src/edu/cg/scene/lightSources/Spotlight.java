@@ -12,6 +12,10 @@ public class Spotlight extends PointLight {
 		return this;
 	}
 	
+	public Vec direction() {
+		return direction;
+	}
+	
 	@Override
 	public String toString() {
 		String endl = System.lineSeparator();
@@ -36,12 +40,24 @@ public class Spotlight extends PointLight {
 	}
 
 	@Override
-	public Vec intensity(Point hittingPoint, Ray rayToLight) {
-		double distance = position.dist(rayToLight.source());
+	protected double peakIntensity() {
+		//the cone factor is the dot product of the direction with a unit vector
+		return baseIntensity() * direction.norm();
+	}
+
+	@Override
+	protected double coneFactor(Point p, double distance) {
+		//the dot product of the direction with the unit vector from the light to the point, like in attenuation
+		return (direction.x * (p.x - position.x) + direction.y * (p.y - position.y) + direction.z * (p.z - position.z)) / distance;
+	}
+
+	@Override
+	public double attenuation(Point hittingPoint, Ray rayToLight) {
+		double distance = distanceToLight(rayToLight.source());
 		double Fatt =getFatt(distance);
-		double VVd = direction.dot(rayToLight.direction().neg());
+		Vec L = rayToLight.direction();
+		double VVd = direction.x * -L.x + direction.y * -L.y + direction.z * -L.z;
 		//double VVd = new Vec(hittingPoint.sub(position)).dot(direction);
-		Vec IL = intensity.mult(VVd /Fatt);
-		return IL;
+		return VVd /Fatt;
 	}
 }
@@ -61,48 +61,102 @@ public class AxisAlignedBox extends Shape {
 		return this;
 	}
 
+	/**
+	 * Moves both corners at once (setting them one by one could mix the old corners with the new ones).
+	 */
+	public AxisAlignedBox initBounds(Point minPoint, Point maxPoint) {
+		this.minPoint = minPoint;
+		this.maxPoint = maxPoint;
+		fixBoundryPoints();
+		return this;
+	}
+
+	public Point minPoint() {
+		return minPoint;
+	}
+
+	public Point maxPoint() {
+		return maxPoint;
+	}
+
+	@Override
+	public BoundingBox boundingBox() {
+		return new BoundingBox(minPoint, maxPoint);
+	}
+
 	@Override
 	public Hit intersect(final Ray ray) {
+		double t = signedHitDistance(ray);
+		if (Double.isNaN(t))
+			return null;
+
+		return t < 0 ?
+				new Hit(-t, findNormalOnIntersectPoint(ray.add(-t)).neg()).setWithin()
+				: new Hit(t, findNormalOnIntersectPoint(ray.add(t))).setOutside();
+	}
+
+	@Override
+	public boolean occluded(Ray ray, double maxT) {
+		double t = Math.abs(signedHitDistance(ray));
+		return t < maxT; // false for NaN
+	}
+
+	/**
+	 * The slabs test of the ray against the box.
+	 * @return the distance to the hit, negated if the source of the ray is within the box, or NaN if there is no hit.
+	 */
+	private double signedHitDistance(Ray ray) {
+		Point p = ray.source();
+		Vec v = ray.direction();
+		return signedHitDistance(p.x, p.y, p.z, v.x, v.y, v.z,
+				minPoint.x, minPoint.y, minPoint.z, maxPoint.x, maxPoint.y, maxPoint.z);
+	}
+
+	/**
+	 * The slabs test of a ray, given by its source (px, py, pz) and direction (vx, vy, vz), against a box.
+	 * Used by the packet tracing of the BVH, which keeps the boxes in flat arrays.
+	 * @return the distance to the hit, negated if the source of the ray is within the box, or NaN if there is no hit.
+	 */
+	public static double signedHitDistance(double px, double py, double pz, double vx, double vy, double vz,
+			double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
 		double tMin = -1 * Ops.infinity;
 		double tMax = Ops.infinity;
-		final double[] sourcePoint = ray.source().asArray();
-		final double[] direction = ray.direction().asArray();
-		final double[] minPoint = this.minPoint.asArray();
-		final double[] maxPoint = this.maxPoint.asArray();
 		for (int i = 0; i < 3; i++)
 		{
-			if (Math.abs(direction[i]) > Ops.epsilon)
+			double source = coordinate(px, py, pz, i);
+			double direction = coordinate(vx, vy, vz, i);
+			double min = coordinate(minX, minY, minZ, i);
+			double max = coordinate(maxX, maxY, maxZ, i);
+			if (Math.abs(direction) > Ops.epsilon)
 			{
-				double t1 = (minPoint[i] - sourcePoint[i]) / direction[i];
-				double t2 = (maxPoint[i] - sourcePoint[i]) / direction[i];
+				double t1 = (min - source) / direction;
+				double t2 = (max - source) / direction;
 
 				if (Double.isNaN(t1) || Double.isNaN(t2))
 				{
-					return null;
+					return Double.NaN;
 				}
 
 				tMin = max(tMin, min(t1, t2)); // max of all min
 				tMax = min(tMax, max(t1, t2)); // min of all max
 
 				if (tMin > tMax || tMax < Ops.epsilon) {
-					return null;
+					return Double.NaN;
 				}
 
 			}
-			else
-				{
-					if (sourcePoint[i] < minPoint[i] || sourcePoint[i] > maxPoint[i])
-					{
-						return null;
-					}
-				}
+			else if (source < min || source > max)
+			{
+				return Double.NaN;
+			}
 		}
 
-		return tMin < Ops.epsilon ?
-				new Hit(tMax, findNormalOnIntersectPoint(ray.add(tMax)).neg()).setWithin()
-				: new Hit(tMin, findNormalOnIntersectPoint(ray.add(tMin))).setOutside();
+		return tMin < Ops.epsilon ? -tMax : tMin;
 	}
 
+	private static double coordinate(double x, double y, double z, int i) {
+		return i == 0 ? x : (i == 1 ? y : z);
+	}
 
 	public Vec findNormalOnIntersectPoint(Point IntersectPoint)
 	{
@@ -1,5 +1,6 @@
 package edu.cg.scene.objects;
 
+import edu.cg.algebra.BoundingBox;
 import edu.cg.algebra.Hit;
 import edu.cg.algebra.Ray;
 
@@ -15,4 +16,23 @@ public interface Intersectable {
 	 * @return The hit point of the ray with the object if exist and null otherwise. 
 	 */
 	public Hit intersect(Ray ray);
+	
+	/**
+	 * Checks if the ray hits the object before the specified distance.
+	 * Unlike intersect, this query only answers yes or no, so it doesn't allocate a hit
+	 * and it may stop at the first blocker it finds (for shadow rays).
+	 * 
+	 * @param ray the specified ray
+	 * @param maxT only hits that are closer than maxT are considered
+	 * @return true if the ray hits the object at a distance smaller than maxT.
+	 */
+	public boolean occluded(Ray ray, double maxT);
+	
+	/**
+	 * Returns an axis aligned box that contains the whole object (for acceleration structures).
+	 * @return the bounding box of the object, or null if the object is unbounded.
+	 */
+	public default BoundingBox boundingBox() {
+		return null;
+	}
 }
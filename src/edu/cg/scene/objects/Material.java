@@ -1,5 +1,8 @@
 package edu.cg.scene.objects;
 
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
 import edu.cg.algebra.Vec;
 
 public class Material {
@@ -71,8 +74,15 @@ public class Material {
 	 * @return an object representing a glass material.
 	 */
 	public static Material getGlassMaterial(boolean transparent) {
+		return getGlassMaterial(transparent, ThreadLocalRandom.current());
+	}
+
+	/**
+	 * Creates a glass material, whose shininess is drawn from the given random generator.
+	 */
+	public static Material getGlassMaterial(boolean transparent, Random random) {
 		Material mat = new Material();
-		int shininess = 1 + (int) (Math.random() * ((15 - 1) + 1));
+		int shininess = 1 + (int) (random.nextDouble() * ((15 - 1) + 1));
 		mat.initKa(new Vec(0.1)).initKs(new Vec(0.1)).initShininess(shininess);
 		mat.initKd(new Vec(0.1));
 		mat.initReflectionIntensity(0.95);
@@ -94,20 +104,28 @@ public class Material {
 	 * @return Returns a random material.
 	 */
 	public static Material getRandomMaterial() {
-		boolean isTransparent = (Math.random() < 0.5 ? true : false);
-		boolean isReflect = (Math.random() < 0.5 ? true : false);
-		if (Math.random() < 0.1) {
-			return getGlassMaterial(isTransparent);
+		return getRandomMaterial(ThreadLocalRandom.current());
+	}
+
+	/**
+	 * Generates a random material from the given random generator, so a seeded generator
+	 * always generates the same materials.
+	 */
+	public static Material getRandomMaterial(Random random) {
+		boolean isTransparent = (random.nextDouble() < 0.5 ? true : false);
+		boolean isReflect = (random.nextDouble() < 0.5 ? true : false);
+		if (random.nextDouble() < 0.1) {
+			return getGlassMaterial(isTransparent, random);
 		}
 		// Lets pick a random color
-		double rComponent = Math.random(), gComponent = Math.random(), bComponent = Math.random();
+		double rComponent = random.nextDouble(), gComponent = random.nextDouble(), bComponent = random.nextDouble();
 		// Lets pick a random refraction intensity
-		double refractionIn = isTransparent ? 0.5 * Math.random() : 0.0;
+		double refractionIn = isTransparent ? 0.5 * random.nextDouble() : 0.0;
 		// Lets pick a random reflection intensity
-		double reflectionIn = isReflect ? 0.5 * Math.random() : 0.0;
+		double reflectionIn = isReflect ? 0.5 * random.nextDouble() : 0.0;
 		// Set random specular reflection
-		double specularIn = 0.5 * Math.random();
-		double randomRefractionIndex = 1.0 + 0.8 * Math.random();
+		double specularIn = 0.5 * random.nextDouble();
+		double randomRefractionIndex = 1.0 + 0.8 * random.nextDouble();
 		Material mat = new Material().initKa(new Vec(rComponent, gComponent, bComponent))
 				.initKd(new Vec(rComponent, gComponent, bComponent)).initKs(new Vec(specularIn))
 				.initReflectionIntensity(reflectionIn);
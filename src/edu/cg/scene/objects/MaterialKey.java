@@ -0,0 +1,71 @@
+package edu.cg.scene.objects;
+
+import java.util.Arrays;
+
+import edu.cg.algebra.Vec;
+
+/**
+ * An immutable key of the coefficients of a material, for interning equal materials.
+ * Materials themselves are mutable (see the init methods), so they are not used as keys.
+ */
+public final class MaterialKey {
+	//Ka, Kd and Ks (x, y, z each), reflection intensity, shininess, transparency (0 or 1),
+	//refraction intensity and refraction index
+	public static final int SIZE = 14;
+
+	private final double[] values;
+
+	public MaterialKey(Material material) {
+		this.values = values(material, new double[SIZE]);
+	}
+
+	/**
+	 * @param values - the coefficients of a material, in the order of values(Material, double[]). They are copied.
+	 */
+	public MaterialKey(double[] values) {
+		this.values = Arrays.copyOf(values, SIZE);
+	}
+
+	/**
+	 * Writes the coefficients of the material into values.
+	 * @return values
+	 */
+	public static double[] values(Material material, double[] values) {
+		values[0] = material.Ka.x;
+		values[1] = material.Ka.y;
+		values[2] = material.Ka.z;
+		values[3] = material.Kd.x;
+		values[4] = material.Kd.y;
+		values[5] = material.Kd.z;
+		values[6] = material.Ks.x;
+		values[7] = material.Ks.y;
+		values[8] = material.Ks.z;
+		values[9] = material.reflectionIntensity;
+		values[10] = material.shininess;
+		values[11] = material.isTransparent ? 1 : 0;
+		values[12] = material.refractionIntensity;
+		values[13] = material.refractionIndex;
+		return values;
+	}
+
+	/**
+	 * @return a new material with the coefficients of the key.
+	 */
+	public Material toMaterial() {
+		return new Material().initKa(new Vec(values[0], values[1], values[2]))
+				.initKd(new Vec(values[3], values[4], values[5])).initKs(new Vec(values[6], values[7], values[8]))
+				.initReflectionIntensity(values[9]).initShininess((int)values[10])
+				.initIsTransparent(values[11] != 0).initRefractionIntensity(values[12])
+				.initRefractionIndex(values[13]);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof MaterialKey && Arrays.equals(values, ((MaterialKey)other).values);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(values);
+	}
+}
@@ -0,0 +1,39 @@
+package edu.cg.scene.objects;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A table of distinct materials: equal materials (by their MaterialKey) are interned into a single shared entry,
+ * which is referred to by its (small) index.
+ * The table keeps its own copies of the materials, so the entries don't change when the materials
+ * that were interned are modified later, and the entries must not be modified themselves.
+ */
+public class MaterialTable {
+	private final List<Material> materials = new ArrayList<>();
+	private final Map<MaterialKey, Integer> indices = new HashMap<>();
+
+	/**
+	 * @return the index of the entry that is equal to the given material. An entry is added if there is no such one.
+	 */
+	public int intern(Material material) {
+		MaterialKey key = new MaterialKey(material);
+		Integer index = indices.get(key);
+		if(index == null) {
+			index = materials.size();
+			materials.add(key.toMaterial());
+			indices.put(key, index);
+		}
+		return index;
+	}
+
+	public Material get(int index) {
+		return materials.get(index);
+	}
+
+	public int size() {
+		return materials.size();
+	}
+}
@@ -1,5 +1,6 @@
 package edu.cg.scene.objects;
 
+import edu.cg.algebra.BoundingBox;
 import edu.cg.algebra.Hit;
 import edu.cg.algebra.Ops;
 import edu.cg.algebra.Point;
@@ -10,7 +11,7 @@ public class Plain extends Shape {
 	//implicit form of a plain: ax + by + cz + d = 0;
 	private double a, b, c, d;
 	
-	private transient Vec normal = null;
+	private transient volatile Vec normal = null;
 	
 	public Plain(double a, double b, double c, double d) {
 		this.a = a;
@@ -27,16 +28,27 @@ public class Plain extends Shape {
 		this(new Vec(0, 1, 0), new Point(0, -1, 0));
 	}
 	
+	public Plain initCoefficients(double a, double b, double c, double d) {
+		this.a = a;
+		this.b = b;
+		this.c = c;
+		this.d = d;
+		normal = null;
+		return this;
+	}
+	
 	@Override
 	public String toString() {
 		String endl = System.lineSeparator();
 		return "Plain: a = " + a + ", b = " + b + ", c = " + c + ", d = " + d + endl;
 	}
 	
-	public synchronized Vec normal() {
-		if(normal == null)
-			normal = new Vec(a, b, c).normalize();
-		return normal;
+	public Vec normal() {
+		//Racing threads compute the same normal, so there is no need to lock.
+		Vec n = normal;
+		if(n == null)
+			normal = n = new Vec(a, b, c).normalize();
+		return n;
 	}
 	
 	
@@ -44,16 +56,47 @@ public class Plain extends Shape {
 		return ray.direction().dot(normal()) < 0 ? normal() : normal().neg();
 	}
 	
+	/**
+	 * @return the coefficients a, b, c, d of the implicit form of the plain.
+	 */
+	public double[] coefficients() {
+		return new double[] { a, b, c, d };
+	}
+	
 	public double substitute(Point p) {
 		Vec abc = new Vec(a, b, c);
 		return abc.dot(p.toVec()) + d;
 	}
 	
+	@Override
+	public BoundingBox boundingBox() {
+		return null;
+	}
+	
 	@Override
 	public Hit intersect(Ray ray) {
-		Vec abc = new Vec(a, b, c);
-		
-		double t = -substitute(ray.source()) / ray.direction().dot(abc);
+		double t = hitDistance(ray);
 		return t > Ops.epsilon & t < Ops.infinity ? new Hit(t, normal(ray)) : null;
 	}
+	
+	private double hitDistance(Ray ray) {
+		Point p = ray.source();
+		Vec v = ray.direction();
+		return hitDistance(a, b, c, d, p.x, p.y, p.z, v.x, v.y, v.z);
+	}
+	
+	/**
+	 * The distance along a ray, given by its source (px, py, pz) and direction (vx, vy, vz), to the plain
+	 * ax + by + cz + d = 0. It is a hit only if it is between epsilon and infinity.
+	 */
+	public static double hitDistance(double a, double b, double c, double d,
+			double px, double py, double pz, double vx, double vy, double vz) {
+		return -(a*px + b*py + c*pz + d) / (a*vx + b*vy + c*vz);
+	}
+	
+	@Override
+	public boolean occluded(Ray ray, double maxT) {
+		double t = hitDistance(ray);
+		return t > Ops.epsilon & t < Ops.infinity & t < maxT;
+	}
 }
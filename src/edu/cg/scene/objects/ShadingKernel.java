@@ -0,0 +1,80 @@
+package edu.cg.scene.objects;
+
+import edu.cg.algebra.MutableVec;
+import edu.cg.algebra.Vec;
+
+/**
+ * The Phong shading of a single material, with its constants taken out of the material once per render:
+ * the ambient color (Ka * Iamb), the diffuse and specular coefficients and the integer shininess.
+ * The specular factor (V.R)^n is raised by squaring, and is skipped entirely if the material has no Ks.
+ */
+public final class ShadingKernel {
+	private final double ambientX, ambientY, ambientZ;
+	private final double kdX, kdY, kdZ;
+	private final double ksX, ksY, ksZ;
+	private final int shininess;
+	private final boolean specular; //false if Ks is 0
+
+	public ShadingKernel(Material material, Vec ambient) {
+		ambientX = material.Ka.x * ambient.x;
+		ambientY = material.Ka.y * ambient.y;
+		ambientZ = material.Ka.z * ambient.z;
+		kdX = material.Kd.x;
+		kdY = material.Kd.y;
+		kdZ = material.Kd.z;
+		ksX = material.Ks.x;
+		ksY = material.Ks.y;
+		ksZ = material.Ks.z;
+		shininess = material.shininess;
+		specular = ksX != 0 | ksY != 0 | ksZ != 0;
+	}
+
+	/**
+	 * Sets I to the ambient color of the material, Ka * Iamb.
+	 * @return I
+	 */
+	public MutableVec ambient(MutableVec I) {
+		return I.set(ambientX, ambientY, ambientZ);
+	}
+
+	/**
+	 * Adds the diffuse and specular terms of a light, (Kd*(N.L) + Ks*(V.R)^n) * Il, to I.
+	 * @param N - the normal at the hit.
+	 * @param L - the direction to the light.
+	 * @param D - the direction of the ray that hit (V = -D).
+	 */
+	public void addLightDependent(Vec N, Vec L, Vec D, MutableVec Il, MutableVec I) {
+		double NL = N.dot(L);
+		if(!specular) {
+			I.x += kdX*NL * Il.x;
+			I.y += kdY*NL * Il.y;
+			I.z += kdZ*NL * Il.z;
+			return;
+		}
+
+		//R = Ops.reflect(L, N), V = -D
+		double a = -2 * L.dot(N);
+		double VR = -D.x * (L.x + a*N.x) + -D.y * (L.y + a*N.y) + -D.z * (L.z + a*N.z);
+		double speclar = pow(VR, shininess);
+
+		I.x += (kdX*NL + ksX*speclar) * Il.x;
+		I.y += (kdY*NL + ksY*speclar) * Il.y;
+		I.z += (kdZ*NL + ksZ*speclar) * Il.z;
+	}
+
+	/**
+	 * @return x^n, by squaring for non negative exponents (log(n) multiplications instead of Math.pow).
+	 */
+	public static double pow(double x, int n) {
+		if(n < 0)
+			return Math.pow(x, n);
+		double result = 1;
+		while(n != 0) {
+			if((n & 1) != 0)
+				result *= x;
+			x *= x;
+			n >>>= 1;
+		}
+		return result;
+	}
+}
@@ -1,7 +1,15 @@
 package edu.cg.scene.objects;
 
+import edu.cg.algebra.BoundingBox;
 
 public abstract class Shape implements Intersectable {
 	// An abstract class the represents a shape.
 	// You can add abstract methods here.
+	
+	/**
+	 * Returns an axis aligned box that contains the whole shape.
+	 * @return the bounding box of the shape, or null if the shape is unbounded (e.g. a plain).
+	 */
+	@Override
+	public abstract BoundingBox boundingBox();
 }
@@ -32,38 +32,69 @@ public class Sphere extends Shape {
 		return this;
 	}
 
-    @Override
-    public Hit intersect(Ray ray) {
-        double a = 1;
-        double b = ray.direction().mult(2.0).dot(ray.source().sub(center));
-        double c = ray.source().distSqr(center) - Math.pow(radius, 2);
-        double delta = Math.pow(b, 2) - (4 * a * c) ;
-        if(delta < 0) {
-            return null;
-        }
-        if(delta == 0){
-            double t = -b / ( 2 * a);
-            if(t < Ops.epsilon || t > Ops.infinity){
-                return null;
-            }
-            Vec norm = ray.add(t).sub(center).normalize();
-            return new Hit(t, norm);
-        }
-        //delta > 0
-        double t1 = (-b + Math.sqrt(delta)) / ( 2 * a);
-        double t2 = (-b - Math.sqrt(delta)) / ( 2 * a);
-        if(t1 < Ops.epsilon) return null;// both are behind
-        double t = t2;
-        boolean isWithin = false;
-        Vec norm = ray.add(t).sub(center).normalize();
-        if(t2 < Ops.epsilon) {// we are inside
-            t = t1;
-            isWithin = true;
-            norm = ray.add(t).sub(center).normalize().neg();
-        }
-        if(t > Ops.infinity){
-            return null;
-        }
-        return new Hit(t, norm).setIsWithin(isWithin);
-    }
+	public Point center() {
+		return center;
+	}
+
+	public double radius() {
+		return radius;
+	}
+
+	@Override
+	public BoundingBox boundingBox() {
+		return new BoundingBox(center.add(new Vec(-radius)), center.add(new Vec(radius)));
+	}
+
+	@Override
+	public Hit intersect(Ray ray) {
+		Point p = ray.source();
+		Vec v = ray.direction();
+		double dx = p.x - center.x, dy = p.y - center.y, dz = p.z - center.z;
+		double b = 2 * (v.x*dx + v.y*dy + v.z*dz);
+		double c = dx*dx + dy*dy + dz*dz - radius*radius;
+		double delta = b*b - 4*c;
+		if(delta < 0)
+			return null;
+		double sqrtDelta = Math.sqrt(delta);
+		double t1 = (-b + sqrtDelta) / 2;
+		double t2 = (-b - sqrtDelta) / 2;
+		if(t1 < Ops.epsilon)
+			return null; // both are behind
+		boolean isWithin = t2 < Ops.epsilon; // we are inside
+		double t = isWithin ? t1 : t2;
+		if(t > Ops.infinity)
+			return null;
+		Vec norm = new Vec(p.x + t*v.x - center.x, p.y + t*v.y - center.y, p.z + t*v.z - center.z).normalize();
+		return new Hit(t, isWithin ? norm.neg() : norm).setIsWithin(isWithin);
+	}
+
+	@Override
+	public boolean occluded(Ray ray, double maxT) {
+		Point p = ray.source();
+		Vec v = ray.direction();
+		return hitDistance(p.x, p.y, p.z, v.x, v.y, v.z, center.x, center.y, center.z, radius*radius) < maxT;
+	}
+
+	/**
+	 * Intersects a ray, given by its source (px, py, pz) and direction (vx, vy, vz), with a sphere.
+	 * Used by the packet tracing of the BVH, which keeps the spheres in flat arrays.
+	 * @param radiusSqr - the squared radius of the sphere.
+	 * @return the distance to the hit (the same as the one of intersect), or infinity if there is no hit.
+	 */
+	public static double hitDistance(double px, double py, double pz, double vx, double vy, double vz,
+			double cx, double cy, double cz, double radiusSqr) {
+		double dx = px - cx, dy = py - cy, dz = pz - cz;
+		double b = 2 * (vx*dx + vy*dy + vz*dz);
+		double c = dx*dx + dy*dy + dz*dz - radiusSqr;
+		double delta = b*b - 4*c;
+		if(delta < 0)
+			return Double.POSITIVE_INFINITY;
+		double sqrtDelta = Math.sqrt(delta);
+		double t1 = (-b + sqrtDelta) / 2;
+		double t2 = (-b - sqrtDelta) / 2;
+		if(t1 < Ops.epsilon)
+			return Double.POSITIVE_INFINITY; // both are behind
+		double t = t2 < Ops.epsilon ? t1 : t2;
+		return t <= Ops.infinity ? t : Double.POSITIVE_INFINITY;
+	}
 }
@@ -1,6 +1,7 @@
 package edu.cg.scene.objects;
 
 import edu.cg.UnimplementedMethodException;
+import edu.cg.algebra.BoundingBox;
 import edu.cg.algebra.Hit;
 import edu.cg.algebra.Ray;
 import edu.cg.algebra.Vec;
@@ -8,6 +9,7 @@ import edu.cg.algebra.Vec;
 public class Surface implements Intersectable {
 	private Shape shape;
 	private Material material;
+	private transient int materialIndex = -1; //the index of the material in the material table of the scene
 	
 	public Surface(Shape shape, Material material) {
 		this.shape = shape;
@@ -36,6 +38,40 @@ public class Surface implements Intersectable {
 		return hit;
 	}
 	
+	@Override
+	public boolean occluded(Ray ray, double maxT) {
+		return shape.occluded(ray, maxT);
+	}
+	
+	@Override
+	public BoundingBox boundingBox() {
+		return shape.boundingBox();
+	}
+	
+	public Shape shape() {
+		return shape;
+	}
+	
+	public Material material() {
+		return material;
+	}
+	
+	/**
+	 * Sets the index of the entry of a material table that is equal to the material of the surface.
+	 * The material itself is kept as it is.
+	 */
+	public Surface initMaterialIndex(int materialIndex) {
+		this.materialIndex = materialIndex;
+		return this;
+	}
+	
+	/**
+	 * @return the index of the material in the material table of the scene, or -1 if it isn't in a table.
+	 */
+	public int materialIndex() {
+		return materialIndex;
+	}
+	
 	public Vec Ka() {
 		return material.Ka;
 	}
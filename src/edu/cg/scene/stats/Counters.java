@@ -0,0 +1,89 @@
+package edu.cg.scene.stats;
+
+import edu.cg.scene.objects.AxisAlignedBox;
+import edu.cg.scene.objects.Intersectable;
+import edu.cg.scene.objects.Plain;
+import edu.cg.scene.objects.Sphere;
+import edu.cg.scene.objects.Surface;
+
+/**
+ * Per thread render counters.
+ * The counters are plain fields that only their thread updates, so counting costs no synchronization.
+ * They are added to the shared RenderStats (and reset) once per tile.
+ */
+public class Counters {
+	//The kinds of the intersected primitives
+	public static final int SPHERE = 0;
+	public static final int BOX = 1;
+	public static final int PLAIN = 2;
+	public static final int OTHER = 3;
+	public static final int KINDS = 4;
+	
+	//The recursion depth histogram has a bucket per depth, the last one also counts the deeper rays.
+	public static final int DEPTHS = 16;
+	
+	private static final ThreadLocal<Counters> counters = ThreadLocal.withInitial(Counters::new);
+	
+	public long primaryRays;
+	public long shadowRays;
+	public long reflectionRays;
+	public long refractionRays;
+	public long prunedRays; //secondary rays that were not shot because of their low throughput
+	public long culledLights; //lights that were not shaded because of their low contribution
+	public long shadowCacheHits; //shadow rays that were blocked by the cached blocker of their light
+	public long nodeVisits;
+	public final long[] tests = new long[KINDS];
+	public final long[] depths = new long[DEPTHS];
+	
+	private Counters() {
+	}
+	
+	/**
+	 * @return the counters of the current thread.
+	 */
+	public static Counters get() {
+		return counters.get();
+	}
+	
+	/**
+	 * Counts a ray that is traced in the given depth of the recursion (0 for primary rays).
+	 */
+	public void depth(int depth) {
+		++depths[depth < DEPTHS ? depth : DEPTHS - 1];
+	}
+	
+	void reset() {
+		primaryRays = shadowRays = reflectionRays = refractionRays = prunedRays = culledLights = shadowCacheHits = nodeVisits = 0;
+		for (int i = 0; i < KINDS; i++)
+			tests[i] = 0;
+		for (int i = 0; i < DEPTHS; i++)
+			depths[i] = 0;
+	}
+	
+	/**
+	 * @return the kind of the primitive, for counting its intersection tests.
+	 */
+	public static int kindOf(Intersectable primitive) {
+		Object shape = primitive instanceof Surface ? ((Surface)primitive).shape() : primitive;
+		if(shape instanceof Sphere)
+			return SPHERE;
+		if(shape instanceof AxisAlignedBox)
+			return BOX;
+		if(shape instanceof Plain)
+			return PLAIN;
+		return OTHER;
+	}
+	
+	static String kindName(int kind) {
+		switch(kind) {
+		case SPHERE:
+			return "sphere";
+		case BOX:
+			return "box";
+		case PLAIN:
+			return "plain";
+		default:
+			return "other";
+		}
+	}
+}
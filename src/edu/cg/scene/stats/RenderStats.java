@@ -0,0 +1,245 @@
+package edu.cg.scene.stats;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Statistics of renderings: traced rays by type, intersection tests by primitive kind, BVH node visits,
+ * a histogram of the recursion depths and the time per tile.
+ * The threads add their Counters once per tile, into striped adders, so the contention is low.
+ * Every render has its own statistics, which are also added to the global statistics.
+ * The global statistics are registered as the MBean edu.cg:type=RenderStats.
+ */
+public class RenderStats implements RenderStatsMBean {
+	public static final String OBJECT_NAME = "edu.cg:type=RenderStats";
+	
+	private static RenderStats global = null;
+	
+	private final RenderStats parent;
+	private final LongAdder primaryRays = new LongAdder();
+	private final LongAdder shadowRays = new LongAdder();
+	private final LongAdder reflectionRays = new LongAdder();
+	private final LongAdder refractionRays = new LongAdder();
+	private final LongAdder prunedRays = new LongAdder();
+	private final LongAdder culledLights = new LongAdder();
+	private final LongAdder shadowCacheHits = new LongAdder();
+	private final LongAdder nodeVisits = new LongAdder();
+	private final LongAdder[] tests = adders(Counters.KINDS);
+	private final LongAdder[] depths = adders(Counters.DEPTHS);
+	private final LongAdder tiles = new LongAdder();
+	private final LongAdder tileNanos = new LongAdder();
+	private final LongAccumulator maxTileNanos = new LongAccumulator(Math::max, 0);
+	
+	/**
+	 * Creates the statistics of a single render, which are also added to the global statistics.
+	 */
+	public RenderStats() {
+		this(global());
+	}
+	
+	private RenderStats(RenderStats parent) {
+		this.parent = parent;
+	}
+	
+	/**
+	 * @return the statistics of all the renderings of this JVM.
+	 */
+	public static synchronized RenderStats global() {
+		if(global == null) {
+			global = new RenderStats(null);
+			try {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(global, new ObjectName(OBJECT_NAME));
+			} catch (JMException | SecurityException e) {
+				//the statistics are still collected, they are just not exposed
+			}
+		}
+		return global;
+	}
+	
+	private static LongAdder[] adders(int n) {
+		LongAdder[] adders = new LongAdder[n];
+		for (int i = 0; i < n; i++)
+			adders[i] = new LongAdder();
+		return adders;
+	}
+	
+	/**
+	 * Adds the counters of a thread, and resets them.
+	 */
+	public void add(Counters counters) {
+		addCounters(counters);
+		counters.reset();
+	}
+	
+	private void addCounters(Counters counters) {
+		primaryRays.add(counters.primaryRays);
+		shadowRays.add(counters.shadowRays);
+		reflectionRays.add(counters.reflectionRays);
+		refractionRays.add(counters.refractionRays);
+		prunedRays.add(counters.prunedRays);
+		culledLights.add(counters.culledLights);
+		shadowCacheHits.add(counters.shadowCacheHits);
+		nodeVisits.add(counters.nodeVisits);
+		for (int i = 0; i < Counters.KINDS; i++)
+			tests[i].add(counters.tests[i]);
+		for (int i = 0; i < Counters.DEPTHS; i++)
+			depths[i].add(counters.depths[i]);
+		if(parent != null)
+			parent.addCounters(counters);
+	}
+	
+	/**
+	 * Adds a rendered tile.
+	 * @param nanos - the time that it took to render the tile.
+	 */
+	public void addTile(long nanos) {
+		tiles.increment();
+		tileNanos.add(nanos);
+		maxTileNanos.accumulate(nanos);
+		if(parent != null)
+			parent.addTile(nanos);
+	}
+	
+	//MARK: RenderStatsMBean
+	@Override
+	public long getPrimaryRays() {
+		return primaryRays.sum();
+	}
+	
+	@Override
+	public long getShadowRays() {
+		return shadowRays.sum();
+	}
+	
+	@Override
+	public long getReflectionRays() {
+		return reflectionRays.sum();
+	}
+	
+	@Override
+	public long getRefractionRays() {
+		return refractionRays.sum();
+	}
+	
+	@Override
+	public long getPrunedRays() {
+		return prunedRays.sum();
+	}
+	
+	@Override
+	public long getCulledLights() {
+		return culledLights.sum();
+	}
+	
+	@Override
+	public long getShadowCacheHits() {
+		return shadowCacheHits.sum();
+	}
+	
+	@Override
+	public long getSphereTests() {
+		return tests[Counters.SPHERE].sum();
+	}
+	
+	@Override
+	public long getBoxTests() {
+		return tests[Counters.BOX].sum();
+	}
+	
+	@Override
+	public long getPlainTests() {
+		return tests[Counters.PLAIN].sum();
+	}
+	
+	@Override
+	public long getOtherTests() {
+		return tests[Counters.OTHER].sum();
+	}
+	
+	@Override
+	public long getNodeVisits() {
+		return nodeVisits.sum();
+	}
+	
+	@Override
+	public long[] getDepthHistogram() {
+		long[] histogram = new long[Counters.DEPTHS];
+		for (int i = 0; i < Counters.DEPTHS; i++)
+			histogram[i] = depths[i].sum();
+		return histogram;
+	}
+	
+	@Override
+	public long getTiles() {
+		return tiles.sum();
+	}
+	
+	@Override
+	public double getMeanTileMillis() {
+		long n = tiles.sum();
+		return n == 0 ? 0 : tileNanos.sum() / 1e6 / n;
+	}
+	
+	@Override
+	public double getMaxTileMillis() {
+		return maxTileNanos.get() / 1e6;
+	}
+	
+	@Override
+	public String getReport() {
+		String endl = System.lineSeparator();
+		StringBuilder report = new StringBuilder();
+		report.append("Rays: ").append(getPrimaryRays()).append(" primary, ").append(getShadowRays()).append(" shadow, ")
+			.append(getReflectionRays()).append(" reflection, ").append(getRefractionRays()).append(" refraction (").append(getPrunedRays()).append(" pruned)").append(endl);
+		if(getCulledLights() > 0)
+			report.append("Culled lights: ").append(getCulledLights()).append(endl);
+		if(getShadowCacheHits() > 0)
+			report.append("Shadow rays blocked by the cached blocker: ").append(getShadowCacheHits()).append(endl);
+		report.append("Intersection tests:");
+		for (int i = 0; i < Counters.KINDS; i++)
+			report.append(" ").append(tests[i].sum()).append(" ").append(Counters.kindName(i)).append(i + 1 < Counters.KINDS ? "," : "");
+		report.append(endl).append("BVH node visits: ").append(getNodeVisits()).append(endl);
+		report.append("Rays by recursion depth:");
+		long[] histogram = getDepthHistogram();
+		int last = histogram.length - 1;
+		while(last > 0 && histogram[last] == 0)
+			--last;
+		for (int i = 0; i <= last; i++)
+			report.append(" ").append(i).append(i == Counters.DEPTHS - 1 ? "+" : "").append(": ").append(histogram[i]);
+		report.append(endl).append(String.format(Locale.ROOT, "Tiles: %d, %.2fms mean, %.2fms max",
+				getTiles(), getMeanTileMillis(), getMaxTileMillis()));
+		return report.toString();
+	}
+	
+	/**
+	 * Resets the statistics (but not the global statistics that they were added to).
+	 */
+	@Override
+	public void reset() {
+		primaryRays.reset();
+		shadowRays.reset();
+		reflectionRays.reset();
+		refractionRays.reset();
+		prunedRays.reset();
+		culledLights.reset();
+		shadowCacheHits.reset();
+		nodeVisits.reset();
+		for (LongAdder adder : tests)
+			adder.reset();
+		for (LongAdder adder : depths)
+			adder.reset();
+		tiles.reset();
+		tileNanos.reset();
+		maxTileNanos.reset();
+	}
+	
+	@Override
+	public String toString() {
+		return getReport();
+	}
+}
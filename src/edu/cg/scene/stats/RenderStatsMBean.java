@@ -0,0 +1,25 @@
+package edu.cg.scene.stats;
+
+/**
+ * The JMX view of the render statistics.
+ */
+public interface RenderStatsMBean {
+	public long getPrimaryRays();
+	public long getShadowRays();
+	public long getReflectionRays();
+	public long getRefractionRays();
+	public long getPrunedRays();
+	public long getCulledLights();
+	public long getShadowCacheHits();
+	public long getSphereTests();
+	public long getBoxTests();
+	public long getPlainTests();
+	public long getOtherTests();
+	public long getNodeVisits();
+	public long[] getDepthHistogram();
+	public long getTiles();
+	public double getMeanTileMillis();
+	public double getMaxTileMillis();
+	public String getReport();
+	public void reset();
+}
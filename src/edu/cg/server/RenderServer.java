@@ -0,0 +1,235 @@
+package edu.cg.server;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.imageio.ImageIO;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import edu.cg.Logger;
+import edu.cg.scene.Scene;
+import edu.cg.scene.io.SceneFiles;
+
+/**
+ * A long running render server over HTTP, which keeps the JVM warm, the loaded scenes (with their
+ * bounding volume hierarchies) in an LRU cache and a single rendering pool for all the requests.
+ * Usage: RenderServer [-port port] [-bind address] [-threads n] [-cache scenes] [-maxBody bytes]
+ * Requests:
+ *   POST /render?width=w&height=h[&viewPlainWidth=v] with a scene file (JSON or binary) as the body,
+ *     responds with a PNG image. The X-Scene-Hash header of the response is the hash of the scene.
+ *     Responds with 413 if the body is bigger than the maximal body size (64MB by default).
+ *   GET /render?scene=hash&width=w&height=h[&viewPlainWidth=v] renders a cached scene again,
+ *     responds with 404 if it isn't cached (anymore).
+ *   GET /status responds with the state of the cache.
+ * A scene that is cached is not loaded nor prepared again, so rendering it at another resolution
+ * only shoots its rays. The server listens on the loopback address, unless another address is given.
+ */
+public class RenderServer {
+	static final String LISTENING = "RenderServer listening on port ";
+	private static final int MAX_IMAGE_SIZE = 8192;
+	private static final int REQUEST_THREADS = 4;
+	private static final int DEFAULT_MAX_BODY_SIZE = 64 << 20;
+
+	private final SceneCache cache;
+	private final ForkJoinPool pool;
+	private final Logger logger;
+	private final int maxBodySize; //in bytes, so a single request can't run the server out of memory
+
+	RenderServer(int cacheCapacity, int nThreads, int maxBodySize, Logger logger) {
+		this.cache = new SceneCache(cacheCapacity);
+		this.pool = new ForkJoinPool(nThreads);
+		this.maxBodySize = maxBodySize;
+		this.logger = logger;
+	}
+
+	public static void main(String[] args) throws IOException {
+		System.setProperty("java.awt.headless", "true");
+
+		int port = 8080;
+		InetAddress address = InetAddress.getLoopbackAddress();
+		int nThreads = Scene.defaultThreadsCount();
+		int cacheCapacity = 16;
+		int maxBodySize = DEFAULT_MAX_BODY_SIZE;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			switch(args[i]) {
+			case "-port":
+				port = Integer.parseInt(args[i + 1]);
+				break;
+			case "-bind":
+				address = InetAddress.getByName(args[i + 1]);
+				break;
+			case "-threads":
+				nThreads = Integer.parseInt(args[i + 1]);
+				break;
+			case "-cache":
+				cacheCapacity = Integer.parseInt(args[i + 1]);
+				break;
+			case "-maxBody":
+				maxBodySize = Integer.parseInt(args[i + 1]);
+				if(maxBodySize < 1 || maxBodySize == Integer.MAX_VALUE) {
+					System.err.println("The maximal body size must be between 1 and " + (Integer.MAX_VALUE - 1));
+					System.exit(2);
+				}
+				break;
+			default:
+				System.err.println("Unknown option: " + args[i]);
+				System.exit(2);
+			}
+		}
+
+		RenderServer renderServer = new RenderServer(cacheCapacity, nThreads, maxBodySize,
+				s -> System.err.println(s));
+		HttpServer server = HttpServer.create(new InetSocketAddress(address, port), 0);
+		server.createContext("/render", renderServer::render);
+		server.createContext("/status", renderServer::status);
+		//the requests only wait for the rendering pool, so a few threads are enough
+		ExecutorService executor = Executors.newFixedThreadPool(REQUEST_THREADS);
+		server.setExecutor(executor);
+		server.start();
+		System.out.println(LISTENING + server.getAddress().getPort());
+		System.out.flush();
+	}
+
+	private void render(HttpExchange exchange) throws IOException {
+		try {
+			Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+			int width = intParameter(query, "width");
+			int height = intParameter(query, "height");
+			double viewPlainWidth = query.containsKey("viewPlainWidth") ?
+					Double.parseDouble(query.get("viewPlainWidth")) : 4.0;
+			if(width < 1 | height < 1 | width > MAX_IMAGE_SIZE | height > MAX_IMAGE_SIZE)
+				throw new IllegalArgumentException("Width and height must be between 1 and " + MAX_IMAGE_SIZE);
+			if(!(viewPlainWidth > 0))
+				throw new IllegalArgumentException("View plain width must be positive");
+
+			String hash;
+			Scene.SharedRenderer renderer;
+			switch(exchange.getRequestMethod()) {
+			case "POST":
+				String length = exchange.getRequestHeaders().getFirst("Content-Length");
+				byte[] data = length != null && Long.parseLong(length) > maxBodySize ? null :
+						readBody(exchange.getRequestBody(), maxBodySize);
+				if(data == null) {
+					respond(exchange, 413, "The scene is bigger than " + maxBodySize + " bytes");
+					return;
+				}
+				hash = sha256(data);
+				renderer = cache.get(hash);
+				if(renderer == null) {
+					Scene scene = SceneFiles.read(data, "from " + exchange.getRemoteAddress());
+					renderer = cache.put(hash, scene.sharedRenderer(pool, logger));
+				}
+				break;
+			case "GET":
+				hash = query.get("scene");
+				renderer = hash == null ? null : cache.get(hash);
+				if(renderer == null) {
+					respond(exchange, 404, "The scene isn't cached: " + hash);
+					return;
+				}
+				break;
+			default:
+				respond(exchange, 405, "Use POST with a scene, or GET with the hash of a cached scene");
+				return;
+			}
+
+			long start = System.nanoTime();
+			BufferedImage img = renderer.render(width, height, viewPlainWidth, logger);
+			ByteArrayOutputStream png = new ByteArrayOutputStream();
+			ImageIO.write(img, "png", png);
+			logger.log(renderer.scene().getName() + " (" + hash + ") has been rendered at " + width + "x" + height +
+					" in " + (System.nanoTime() - start) / 1000000 + "ms. " + cache);
+
+			exchange.getResponseHeaders().set("Content-Type", "image/png");
+			exchange.getResponseHeaders().set("X-Scene-Hash", hash);
+			exchange.sendResponseHeaders(200, png.size());
+			try (OutputStream out = exchange.getResponseBody()) {
+				png.writeTo(out);
+			}
+		} catch(IllegalArgumentException | IOException e) {
+			//malformed parameters or scenes
+			respond(exchange, 400, String.valueOf(e.getMessage()));
+		} catch(Exception e) {
+			logger.log("A render has failed: " + e);
+			respond(exchange, 500, String.valueOf(e));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private void status(HttpExchange exchange) throws IOException {
+		try {
+			respond(exchange, 200, cache + ", " + pool.getParallelism() + " rendering threads");
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static void respond(HttpExchange exchange, int code, String message) throws IOException {
+		byte[] body = (message + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(code, body.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+	}
+
+	private static Map<String, String> parseQuery(String query) {
+		Map<String, String> parameters = new HashMap<>();
+		if(query == null)
+			return parameters;
+		for (String pair : query.split("&")) {
+			int eq = pair.indexOf('=');
+			if(eq > 0)
+				parameters.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+						URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+		}
+		return parameters;
+	}
+
+	private static int intParameter(Map<String, String> query, String name) {
+		String value = query.get(name);
+		if(value == null)
+			throw new IllegalArgumentException("Missing parameter: " + name);
+		return Integer.parseInt(value);
+	}
+
+	/**
+	 * Reads the body, up to limit bytes (a chunked body has no length to check in advance).
+	 * @return the body, or null if it is longer than limit.
+	 */
+	private static byte[] readBody(InputStream in, int limit) throws IOException {
+		try (InputStream body = in) {
+			byte[] data = body.readNBytes(limit + 1);
+			return data.length > limit ? null : data;
+		}
+	}
+
+	static String sha256(byte[] data) {
+		try {
+			StringBuilder hex = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("SHA-256").digest(data))
+				hex.append(String.format("%02x", b));
+			return hex.toString();
+		} catch(NoSuchAlgorithmException e) {
+			//every Java platform supports SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package edu.cg.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import edu.cg.scene.Scene;
+
+/**
+ * The scenes that a RenderServer keeps ready for rendering, keyed by the SHA-256 hash of their contents.
+ * When the cache is full, the least recently rendered scene is evicted.
+ */
+class SceneCache {
+	private final LinkedHashMap<String, Scene.SharedRenderer> scenes;
+	private long hits = 0;
+	private long misses = 0;
+
+	@SuppressWarnings("serial")
+	SceneCache(int capacity) {
+		if(capacity < 1)
+			throw new IllegalArgumentException("Cache capacity must be positive");
+		//an access ordered map iterates from the least recently used entry
+		scenes = new LinkedHashMap<String, Scene.SharedRenderer>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Scene.SharedRenderer> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * @return the renderer of the scene with the given hash, or null if it isn't cached.
+	 */
+	synchronized Scene.SharedRenderer get(String hash) {
+		Scene.SharedRenderer renderer = scenes.get(hash);
+		if(renderer == null)
+			++misses;
+		else
+			++hits;
+		return renderer;
+	}
+
+	/**
+	 * Caches a renderer, unless another one has been cached for the same hash in the meantime.
+	 * @return the cached renderer of the hash.
+	 */
+	synchronized Scene.SharedRenderer put(String hash, Scene.SharedRenderer renderer) {
+		Scene.SharedRenderer cached = scenes.putIfAbsent(hash, renderer);
+		return cached != null ? cached : renderer;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return scenes.size() + " scenes cached, " + hits + " hits, " + misses + " misses";
+	}
+}